@@ -0,0 +1,140 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time (ns/cell) of the cell renderers: RIPSA.cell2html with the table 
+ * context shared by all cells (as the cell pipeline does), RIPSA.cell2html
+ * creating the context for each cell and Cell.toHtml. Each operation renders
+ * one cell, cycling over all cells of an IdbCorpus table with the given
+ * number of columns, label lines and table options. Run the main method (or
+ * the benchmarks jar with -prof gc) to get the allocated bytes/cell.
+ * date: 20261018
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellRenderBenchmark {
+    @Param({"3", "12", "40"})
+    public int columns;
+
+    @Param({"0", "3", "20"})
+    public int labels;
+
+    @Param({"2", "8"})
+    public int options;
+
+    private Cell[] cells;
+    private RIPSA.Context context;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final Table table = new CSV_File().parse(IdbCorpus.csv(20, columns,
+                         columns > 10, false, labels, 3), URLS.CSV_SEPARATOR);
+        final UrlElem elem = new UrlElem();
+        final Map<String,String> tableOptions = new LinkedHashMap<>();
+
+        elem.father = new URL("http://tabnet.datasus.gov.br/cgi/idb2011/a01.htm");
+        elem.csv = new URL("http://tabnet.datasus.gov.br/csv/A123456.csv");
+        elem.qualifRec = new URL(
+               "http://www.ripsa.org.br/fichas/?node=A01&lang=pt&version=idb2011");
+        for (int idx = 0; idx < options; idx++) {
+            tableOptions.put("Opção " + (idx + 1), "Valor da opção " + (idx + 1));
+        }
+        elem.tableOptions = tableOptions;
+
+        final ColumnStore data = table.getData();
+        final List<Cell> lst = new ArrayList<>();
+        for (int row = 0; row < data.getRowCount(); row++) {
+            for (int col = 0; col < data.getColumnCount(); col++) {
+                if (data.isPresent(row, col) && !data.isRefused(row, col)) {
+                    final Cell cell = URLS.newTableCell(table, elem);
+                    cell.setIdx(lst.size() + 1);
+                    cell.setHeader(table.getHeader().get(col));
+                    cell.setRow(table.getRow().get(row));
+                    cell.setValue(data, row, col);
+                    cell.setLabels(table.getLabels());
+                    lst.add(cell);
+                }
+            }
+        }
+        cells = lst.toArray(new Cell[lst.size()]);
+        context = RIPSA.newContext(cells[0]);
+    }
+
+    private Cell nextCell() {
+        final Cell cell = cells[next];
+        next = (next + 1 == cells.length) ? 0 : next + 1;
+        return cell;
+    }
+
+    @Benchmark
+    public String cell2htmlSharedContext() throws IOException {
+        return RIPSA.cell2html(nextCell(), context);
+    }
+
+    @Benchmark
+    public String cell2htmlNewContext() throws IOException {
+        return RIPSA.cell2html(nextCell());
+    }
+
+    @Benchmark
+    public String cellToHtml() {
+        return nextCell().toHtml();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CellRenderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
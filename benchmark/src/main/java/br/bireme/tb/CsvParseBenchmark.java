@@ -0,0 +1,99 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of CSV_File.parse over the IDB table shapes of IdbCorpus, from
+ * a String and from a file. Run the main method (or the benchmarks jar with
+ * -prof gc) to get the allocation rate too.
+ * date: 20261018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParseBenchmark {
+    @Param({IdbCorpus.NARROW, IdbCorpus.WIDE, IdbCorpus.OBS, IdbCorpus.NOTES})
+    public String shape;
+
+    private String csv;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        csv = IdbCorpus.csv(shape);
+        file = File.createTempFile("idb-" + shape, ".csv");
+        Files.write(file.toPath(), csv.getBytes(URLS.DEFAULT_ENCODING));
+        // fails early if the corpus is not a valid table
+        new CSV_File().parse(csv, URLS.CSV_SEPARATOR);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public Table parseString() throws IOException {
+        return new CSV_File().parse(csv, URLS.CSV_SEPARATOR);
+    }
+
+    @Benchmark
+    public Table parseFile() throws IOException {
+        return new CSV_File().parse(file, URLS.DEFAULT_ENCODING, 
+                                                           URLS.CSV_SEPARATOR);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CsvParseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
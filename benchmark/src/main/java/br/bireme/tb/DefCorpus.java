@@ -0,0 +1,150 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+/**
+ * Generates def pages (TabNet query forms) like the IDB ones: a form with
+ * line (L), column (C), content (I) and period (A) selects, each one with
+ * its label, followed by selects of filters. The pages are always the same
+ * for the same size.
+ * The pages are synthetic: the real def pages are served by the DATASUS 
+ * TabNet site, which an offline build can not use, and each IDB edition 
+ * changes them. They follow the markup the parser looks for (uppercase tags,
+ * labels wrapped in {@code <b>}, one option per line, SELECTED and MULTIPLE
+ * attributes, a county sized filter), so parse and expansion costs are 
+ * comparable, but absolute timings may differ from the ones of real pages.
+ * date: 20261018
+ */
+final class DefCorpus {
+    /** 5 selects, up to 4 options (a minimal def page) */
+    static final String SMALL = "small";
+    /** 12 selects with tens of options */
+    static final String MEDIUM = "medium";
+    /** 40 selects, one of them with 5,000 options (like a county list) */
+    static final String LARGE = "large";
+
+    private DefCorpus() {
+    }
+
+    /**
+     * @param size one of SMALL, MEDIUM or LARGE
+     * @return the def page content
+     */
+    static String page(final String size) {
+        switch (size) {
+            case SMALL: return page(4, 3, 2, 3, 1, 2);
+            case MEDIUM: return page(20, 20, 6, 20, 8, 30);
+            case LARGE: return page(40, 40, 10, 30, 36, 100);
+            default: throw new IllegalArgumentException("size: " + size);
+        }
+    }
+
+    /**
+     * @param lines options of the line select
+     * @param columns options of the column select
+     * @param contents options of the content select
+     * @param years options of the period select
+     * @param filters number of filter selects. If there are more than 30, 
+     * the first one has 5,000 options.
+     * @param filterOpts options of each filter select
+     * @return the def page content
+     */
+    static String page(final int lines,
+                       final int columns,
+                       final int contents,
+                       final int years,
+                       final int filters,
+                       final int filterOpts) {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("<HTML>\n<HEAD>\n<TITLE>Indicadores e Dados Básicos"
+                           + "</TITLE>\n<META HTTP-EQUIV=\"Content-Type\" "
+                           + "CONTENT=\"text/html; charset=ISO-8859-1\">\n"
+                           + "<SCRIPT LANGUAGE=\"JavaScript\">\n"
+                           + "function ajuda(x) { window.open(x); }\n"
+                           + "</SCRIPT>\n</HEAD>\n<BODY>\n<CENTER>"
+                           + "<H2>Mortalidade proporcional por idade</H2>"
+                           + "</CENTER>\n");
+        builder.append("<FORM METHOD=\"POST\" "
+                     + "ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n");
+        builder.append("<TABLE>\n<TR><TD>\n");
+        select(builder, "L", "Linha", "Linha", "Região", lines, false);
+        select(builder, "C", "Coluna", "Coluna", "Faixa_Etária", columns, 
+                                                                         false);
+        builder.append("</TD></TR>\n<TR><TD>\n");
+        select(builder, "I", "Incremento", "Conteúdo", "Óbitos", contents, 
+                                                                         false);
+        builder.append("<LABEL for=\"A\"><b>Períodos Disponíveis</b>"
+                                                              + "</LABEL>\n");
+        builder.append("<SELECT NAME=\"Arquivos\" ID=\"A\" SIZE=4 MULTIPLE>\n");
+        for (int idx = 0; idx < years; idx++) {
+            final int year = 2011 - idx;
+            builder.append("<OPTION VALUE=\"idbm")
+                   .append(String.format("%02d", year % 100))
+                   .append(".dbf\"").append((idx == 0) ? " SELECTED" : "")
+                   .append(">").append(year).append('\n');
+        }
+        builder.append("</SELECT>\n</TD></TR>\n</TABLE>\n");
+        builder.append("<P><B>Seleções Disponíveis:</B></P>\n");
+        for (int idx = 0; idx < filters; idx++) {
+            final int opts = ((idx == 0) && (filters > 30)) ? 5000 : filterOpts;
+            select(builder, "S" + (idx + 1), "SFiltro_" + (idx + 1), 
+                                       "Filtro " + (idx + 1), "Categoria", 
+                                                                   opts, true);
+        }
+        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"formato\" "
+                                                       + "VALUE=\"table\">\n");
+        builder.append("<INPUT TYPE=\"SUBMIT\" NAME=\"mostre\" "
+                                                      + "VALUE=\"Mostra\">\n");
+        builder.append("</FORM>\n</BODY>\n</HTML>\n");
+
+        return builder.toString();
+    }
+
+    private static void select(final StringBuilder builder,
+                               final String id,
+                               final String name,
+                               final String label,
+                               final String value,
+                               final int options,
+                               final boolean filter) {
+        builder.append("<LABEL for=\"").append(id).append("\"><b>")
+               .append(label).append("</b></LABEL>\n");
+        builder.append("<SELECT NAME=\"").append(name).append("\" ID=\"")
+               .append(id).append("\" SIZE=").append(filter ? "6 MULTIPLE" 
+                                                              : "1").append(">\n");
+        if (filter) {
+            builder.append("<OPTION VALUE=\"TODAS_AS_CATEGORIAS__\" SELECTED>"
+                                                   + "Todas as categorias\n");
+        } else if (id.equals("C")) {
+            builder.append("<OPTION VALUE=\"--Não-Ativa--\" SELECTED>"
+                                                             + "Não ativa\n");
+        }
+        for (int idx = 0; idx < options; idx++) {
+            builder.append("<OPTION VALUE=\"").append(value).append('_')
+                   .append(idx + 1).append("\">").append(value.replace('_', ' '))
+                   .append(' ').append(idx + 1).append('\n');
+        }
+        builder.append("</SELECT>\n");
+    }
+}
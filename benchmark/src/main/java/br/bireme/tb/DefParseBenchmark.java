@@ -0,0 +1,106 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time (us/def) of the def form parsing (DEF_File.getSelectOptions), of the
+ * period filter (DEF_File.filterDates) and of the whole def expansion
+ * (DEF_File.generateDefUrls over an already loaded page, consuming all
+ * combinations), over DefCorpus pages of several sizes. Run the main method
+ * (or the benchmarks jar with -prof gc) to get the allocated bytes/def.
+ * date: 20261018
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DefParseBenchmark {
+    @Param({DefCorpus.SMALL, DefCorpus.MEDIUM, DefCorpus.LARGE})
+    public String size;
+
+    private DEF_File def;
+    private URL url;
+    private String content;
+    private Map<String,String> dates;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        def = new DEF_File();
+        url = new URL("http://tabnet.datasus.gov.br/cgi/deftohtm.exe?idb2011/a01.def");
+        content = DefCorpus.page(size);
+        dates = def.getSelectOptions(content).get("A").options;
+    }
+
+    @Benchmark
+    public Map<String,DEF_File.SelectableOptions> getSelectOptions() 
+                                                            throws IOException {
+        return def.getSelectOptions(content);
+    }
+
+    @Benchmark
+    public DEF_File.SelectableOptions filterDates() {
+        final DEF_File.SelectableOptions opts = def.new SelectableOptions();
+        opts.options = dates;
+        return def.filterDates(opts, 1);
+    }
+
+    @Benchmark
+    public void generateDefUrls(final Blackhole hole) throws IOException {
+        final Iterator<DEF_File.DefUrls> it = def.generateDefUrls(url, content);
+        while (it.hasNext()) {
+            hole.consume(it.next());
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DefParseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
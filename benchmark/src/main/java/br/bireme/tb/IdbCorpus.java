@@ -0,0 +1,184 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.util.Random;
+
+/**
+ * Generates csv tables with the shapes of the IDB TabNet exports (title,
+ * subtitle, scope, one or two header lines, data lines, sources, labels and
+ * notes). The tables are always the same for the same shape.
+ * The data is synthetic: the real exports are only reachable through the 
+ * DATASUS TabNet site, which an offline build can not use, and saved copies
+ * would freeze one edition of the IDB. The shapes (sizes, pt-BR numbers,
+ * "-", "..." and "*" marks, label and note lines) follow the exports parsed
+ * by CSV_File, so the benchmarks run the same code paths, but absolute
+ * timings may differ from the ones of a real crawl.
+ * date: 20261018
+ */
+final class IdbCorpus {
+    /** 6 rows x 3 columns, one header line */
+    static final String NARROW = "narrow";
+    /** 60 rows x 40 columns, two header lines */
+    static final String WIDE = "wide";
+    /** 30 rows x 12 columns, each one followed by an "Obs" column */
+    static final String OBS = "obs";
+    /** 20 rows x 6 columns with long sources, labels and notes */
+    static final String NOTES = "notes";
+
+    private static final String[] REGIONS = { "Norte", "Nordeste", "Sudeste",
+        "Sul", "Centro-Oeste", "Rondônia", "Acre", "Amazonas", "Roraima",
+        "Pará", "Amapá", "Tocantins", "Maranhão", "Piauí", "Ceará" };
+
+    private IdbCorpus() {
+    }
+
+    /**
+     * @param shape one of NARROW, WIDE, OBS or NOTES
+     * @return the csv content (separator ';')
+     */
+    static String csv(final String shape) {
+        switch (shape) {
+            case NARROW: return csv(6, 3, false, false, 1, 1);
+            case WIDE: return csv(60, 40, true, false, 2, 2);
+            case OBS: return csv(30, 12, false, true, 3, 2);
+            case NOTES: return csv(20, 6, false, false, 25, 20);
+            default: throw new IllegalArgumentException("shape: " + shape);
+        }
+    }
+
+    /**
+     * @param rows number of data rows
+     * @param columns number of value columns
+     * @param twoHeaders if true the header has two lines
+     * @param obs if true each value column is followed by an "Obs" column
+     * @param labels number of label lines
+     * @param notes number of note lines
+     * @return the csv content (separator ';')
+     */
+    static String csv(final int rows,
+                      final int columns,
+                      final boolean twoHeaders,
+                      final boolean obs,
+                      final int labels,
+                      final int notes) {
+        final Random random = new Random(rows * 31 + columns);
+        final int width = obs ? 2 * columns : columns;
+        final StringBuilder builder = new StringBuilder();
+
+        line(builder, "Mortalidade proporcional por idade, em menores de 1 ano"
+                                                                      , width);
+        line(builder, "Brasil e Regiões, 2011", width);
+        line(builder, "Período:2011", width);
+        if (twoHeaders) {
+            for (int col = 0; col < columns; col++) {
+                builder.append(";Faixa ").append(col / 5 + 1);
+                if (obs) {
+                    builder.append(";Obs");
+                }
+            }
+            builder.append('\n');
+        }
+        builder.append("Região");
+        for (int col = 0; col < columns; col++) {
+            builder.append(";Grupo etário ").append(col + 1);
+            if (obs) {
+                builder.append(";Obs");
+            }
+        }
+        builder.append('\n');
+        for (int row = 0; row < rows; row++) {
+            builder.append(REGIONS[row % REGIONS.length]);
+            if (row >= REGIONS.length) {
+                builder.append(' ').append(row / REGIONS.length);
+            }
+            for (int col = 0; col < columns; col++) {
+                builder.append(';').append(value(random));
+                if (obs) {
+                    builder.append(';').append("***".substring(
+                                                      random.nextInt(3)));
+                }
+            }
+            builder.append('\n');
+        }
+        line(builder, "Fonte: MS/SVS - Sistema de Informações sobre "
+                   + "Mortalidade - SIM e Sistema de Informações sobre "
+                   + "Nascidos Vivos - SINASC.", width);
+        line(builder, "Legenda:", width);
+        for (int idx = 0; idx < labels; idx++) {
+            line(builder, "***".substring(idx % 3) + " Dado sujeito a "
+                                         + "revisão (" + (idx + 1) + ").", width);
+        }
+        for (int idx = 0; idx < notes; idx++) {
+            line(builder, "Nota " + (idx + 1) + ": Os dados de 2011 são "
+                + "preliminares; a proporção é calculada sobre o total de "
+                + "óbitos com idade informada, excluídos os ignorados.", width);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends a line with only the first column filled
+     */
+    private static void line(final StringBuilder builder,
+                             final String text,
+                             final int width) {
+        builder.append(text);
+        for (int col = 0; col < width; col++) {
+            builder.append(';');
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * @return a cell value like the TabNet ones (numbers with pt-BR format,
+     * "-", "..." and values with labels)
+     */
+    private static String value(final Random random) {
+        final int kind = random.nextInt(20);
+
+        if (kind == 0) {
+            return "-";
+        }
+        if (kind == 1) {
+            return "...";
+        }
+        final StringBuilder builder = new StringBuilder();
+        final int integer = random.nextInt((kind < 10) ? 1000 : 10000000);
+        final String digits = Integer.toString(integer);
+        for (int idx = 0; idx < digits.length(); idx++) {
+            if ((idx > 0) && ((digits.length() - idx) % 3 == 0)) {
+                builder.append('.');
+            }
+            builder.append(digits.charAt(idx));
+        }
+        if (kind % 2 == 0) {
+            builder.append(',').append(random.nextInt(10))
+                               .append(random.nextInt(10));
+        }
+        if (kind == 19) {
+            builder.append('*');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares DEF_File.parseForm with the regular expression parser it 
+ * replaced (kept here as the reference) over the benchmark def pages and 
+ * some edge cases.
+ * date: 20261018
+ */
+public class DefFormTest {
+    // the patterns of the replaced parser
+    private static final Pattern FORM_PATTERN = Pattern.compile(
+                                   "(?i)<FORM.+?ACTION=\\\"([^\\\"]+)\\\".*?>");
+    private static final Pattern SELECT_PATTERN = Pattern.compile(
+                                      "(?i)(?s)<SELECT ([^>]+)>(.+?)</SELECT>");
+    private static final Pattern ID_PATTERN = Pattern.compile(
+                                                         "(?i)ID=\"([^\"]+)\"");
+    private static final Pattern NAME_PATTERN = Pattern.compile(
+                                                       "(?i)NAME=\"([^\"]+)\"");
+    private static final Pattern OPTION_PATTERN = Pattern.compile(
+                           "(?i)<OPTION.+?VALUE=\"([^\"]+)\".*?>(.+?)(<|\n|$)");
+
+    private static final String SELECT = 
+                                 "<SELECT NAME=\"Linha\" ID=\"L\" SIZE=1>\n";
+
+    @Test
+    public void corpusPages() {
+        check(DefCorpus.page(DefCorpus.SMALL));
+        check(DefCorpus.page(DefCorpus.MEDIUM));
+        check(DefCorpus.page(DefCorpus.LARGE));
+        check(DefCorpus.page(1, 1, 1, 1, 0, 1));
+        check(DefCorpus.page(7, 3, 1, 12, 31, 4));
+    }
+
+    @Test
+    public void upperCaseLabelFor() {
+        check("<FORM ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n"
+            + "<LABEL FOR=\"L\">Linha</LABEL>\n" + SELECT
+            + "<OPTION VALUE=\"Região\">Região\n</SELECT>\n</FORM>");
+    }
+
+    @Test
+    public void optionLabelStartingWithATag() {
+        check("<FORM ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n"
+            + "<LABEL for=\"L\"><b>Linha</b></LABEL>\n" + SELECT
+            + "<OPTION VALUE=\"a\"><b>Norte</b>\n"
+            + "<OPTION VALUE=\"b\">Sul\n</SELECT>\n</FORM>");
+    }
+
+    @Test
+    public void emptyOptionLabel() {
+        check("<FORM ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n"
+            + "<LABEL for=\"L\">Linha</LABEL>\n" + SELECT
+            + "<OPTION VALUE=\"a\"></OPTION>\n<OPTION VALUE=\"b\">\n"
+            + "<OPTION VALUE=\"c\">Sul\n</SELECT>\n</FORM>");
+    }
+
+    @Test
+    public void spacesAroundValuesAndLabels() {
+        check("<FORM ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n"
+            + "<LABEL for=\"L\">Linha\n de <i>algo</i> </LABEL>\n" + SELECT
+            + "<OPTION VALUE=\" a \" SELECTED>  Norte  \n"
+            + "<OPTION VALUE=\"b\">\tSul </OPTION>\n</SELECT>\n</FORM>");
+    }
+
+    @Test
+    public void formWithoutActionFirst() {
+        check("<FORM NAME=\"busca\" METHOD=\"GET\">\n</FORM>\n"
+            + "<FORM METHOD=\"POST\" ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n"
+            + "<LABEL for=\"L\">Linha</LABEL>\n" + SELECT
+            + "<OPTION VALUE=\"a\">Norte\n</SELECT>\n</FORM>");
+    }
+
+    /**
+     * The replaced parser lost an option that followed another one in the
+     * same line
+     */
+    @Test
+    public void optionsInTheSameLine() throws IOException {
+        final DEF_File.DefForm form = new DEF_File().parseForm(
+              "<FORM ACTION=\"/cgi/tabcgi.exe?idb2011/a01.def\">\n"
+            + "<LABEL for=\"L\">Linha</LABEL>\n" + SELECT
+            + "<OPTION VALUE=\"a\">Norte</OPTION><OPTION VALUE=\"b\">Sul"
+            + "</OPTION>\n</SELECT>\n</FORM>");
+
+        assertEquals("{a=Norte, b=Sul}", 
+                      new TreeMap<>(form.selects.get("L").options).toString());
+    }
+
+    private static void check(final String page) {
+        assertEquals(parseWithRegex(page), parse(page));
+    }
+
+    /**
+     * @return the form parsed by DEF_File.parseForm as a string
+     */
+    private static String parse(final String page) {
+        final DEF_File.DefForm form;
+        try {
+            form = new DEF_File().parseForm(page);
+        } catch (IOException ioe) {
+            return "error: " + ioe.getMessage();
+        }
+        final Map<String,String> selects = new TreeMap<>();
+        for (DEF_File.SelectableOptions opt : form.selects.values()) {
+            selects.put(opt.id, opt.name + "|" + opt.label + "|" 
+                                                 + new TreeMap<>(opt.options));
+        }
+        return form.action + " " + selects;
+    }
+
+    /**
+     * @return the form parsed by the replaced parser as a string
+     */
+    private static String parseWithRegex(final String page) {
+        final Map<String,String> selects = new TreeMap<>();
+        final Matcher matSel = SELECT_PATTERN.matcher(page);
+
+        while (matSel.find()) {
+            final String selAtt = matSel.group(1);
+            final Matcher matId = ID_PATTERN.matcher(selAtt);
+            final Matcher matName = NAME_PATTERN.matcher(selAtt);
+            if (!matId.find()) {
+                return "error: id attr not found: [" + selAtt + "]";
+            }
+            final String id = matId.group(1);
+            if (!matName.find()) {
+                return "error: name attr not found: [" + selAtt + "]";
+            }
+            final Matcher matLab = Pattern.compile("(?i)(?s)<LABEL for=\"" + id
+                     + "\">(<[^>]+>)?(.+?)(</[^>]+>)?</LABEL>").matcher(page);
+            if (!matLab.find()) {
+                return "error: Select label not found.";
+            }
+            final String label = matLab.group(2).replace('\n', ' ').trim();
+            final Matcher mat2 = OPTION_PATTERN.matcher(matSel.group(2));
+            final Map<String,String> options = new TreeMap<>();
+            while (mat2.find()) {
+                options.put(mat2.group(1).trim(), mat2.group(2).trim());
+            }
+            selects.put(id, matName.group(1) + "|" + label + "|" + options);
+        }
+        final Matcher mat = FORM_PATTERN.matcher(page);
+
+        return (mat.find() ? mat.group(1) : null) + " " + selects;
+    }
+}
@@ -27,11 +27,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,13 +60,10 @@ class CSV_File {
         if (encoding == null) {
             throw new NullPointerException("encoding");
         }
-        final List<String[]> myEntries;
-        try (CSVReader reader = new CSVReader(new InputStreamReader(
-                              new FileInputStream(csv), encoding), separator)) {
-            myEntries = reader.readAll();
+        try (Reader reader = new InputStreamReader(new FileInputStream(csv), 
+                                                                   encoding)) {
+            return parse(reader, separator);
         }
-
-        return parse0(myEntries);
     }
 
     /**
@@ -82,30 +78,28 @@ class CSV_File {
         if (csv == null) {
             throw new NullPointerException("csv");
         }
-        final List<String[]> myEntries;
-        try (CSVReader reader =
-                              new CSVReader(new StringReader(csv), separator)) {
-            myEntries = reader.readAll();
-        }
 
-        return parse0(myEntries);
+        return parse(new StringReader(csv), separator);
     }
 
     /**
-     * Parses the csv line elements seaching for Table elements.
-     * @param myEntries list of string of csv fields as returned by raw csv parser
-     * @return The Table object
+     * Parses a csv stream and converts it into a Table object. The csv lines
+     * are read only when they are needed, so the table is filled while the
+     * stream is being read. The reader is not closed.
+     * @param csv comma separated value stream to be parsed
+     * @param separator field separator character
+     * @return the Table object
      * @throws IOException 
      */
-    private Table parse0(final List<String[]> myEntries) throws IOException {
-        assert myEntries != null;
-
-        final Table table = new Table();
-        final Deque<String[]> lines = new ArrayDeque<>();
-
-        for (String[] line : myEntries) {
-            lines.add(line);
+    Table parse(final Reader csv,
+                final char separator) throws IOException {
+        if (csv == null) {
+            throw new NullPointerException("csv");
         }
+        final long begin = System.nanoTime();
+        final Object event = StageEvents.beginParse();
+        final Table table = new Table();
+        final Lines lines = new Lines(new CSVReader(csv, separator));
 
         parseTitle(lines, table);
         parseSubtile(lines, table);
@@ -115,12 +109,49 @@ class CSV_File {
         parseSources(lines, table);
         parseLabels(lines, table);
         parseNotes(lines, table);
+        RunMetrics.get().csvParsed(System.nanoTime() - begin);
+        StageEvents.endParse(event, table.getTitle(), 
+                table.getData().getRowCount(), table.getData().getColumnCount());
 
         return table;
     }
 
+    /**
+     * Csv lines read on demand from the raw csv parser
+     */
+    private static class Lines {
+        private final CSVReader reader;
+        private String[] next;
+        private boolean eof;
+
+        Lines(final CSVReader reader) {
+            assert reader != null;
+            this.reader = reader;
+        }
 
-    private void parseTitle(final Deque<String[]> lines,
+        boolean isEmpty() throws IOException {
+            return peek() == null;
+        }
+
+        String[] peek() throws IOException {
+            if ((next == null) && !eof) {
+                next = reader.readNext();
+                eof = (next == null);
+            }
+            return next;
+        }
+
+        String[] remove() throws IOException {
+            final String[] line = peek();
+            if (line == null) {
+                throw new NoSuchElementException();
+            }
+            next = null;
+            return line;
+        }
+    }
+
+    private void parseTitle(final Lines lines,
                             final Table table) throws IOException {
         assert lines != null;
         assert table != null;
@@ -132,7 +163,7 @@ class CSV_File {
         table.setTitle(line[0].trim());           
     }
 
-    private void parseSubtile(final Deque<String[]> lines,
+    private void parseSubtile(final Lines lines,
                               final Table table) throws IOException {
         assert lines != null;
         assert table != null;
@@ -148,7 +179,7 @@ class CSV_File {
         }        
     }
 
-    private void parseScope(final Deque<String[]> lines,
+    private void parseScope(final Lines lines,
                             final Table table) throws IOException {
         assert lines != null;
         assert table != null;
@@ -170,7 +201,7 @@ class CSV_File {
         table.setScope(scope);
     }
 
-    private void parseHeader(final Deque<String[]> lines,
+    private void parseHeader(final Lines lines,
                              final Table table) throws IOException {
         assert lines != null;
         assert table != null;
@@ -206,14 +237,22 @@ class CSV_File {
         table.setHeader(header);
     }
 
-    private void parseData(final Deque<String[]> lines,
+    private void parseData(final Lines lines,
                            final Table table) throws IOException {
         assert lines != null;
         assert table != null;
 
-        final ArrayList<ArrayList<String>> ret = new ArrayList<>();
+        final ArrayList<ArrayList<String>> header = new ArrayList<>();
+        for (ArrayList<String> hdr : table.getHeader()) {
+            if (!hdr.get(0).equals("Obs")) {
+                header.add(hdr);
+            }
+        }
+        final ColumnStore data = new ColumnStore(header.size());
         final ArrayList<String> row = new ArrayList<>();
+        final ArrayList<String> lstLines = new ArrayList<>();
         final Matcher mat = LABEL_PAT.matcher("");
+        int firstSize = -1; // number of values of the first data line
 
         while (true) {
             if (lines.isEmpty()) {
@@ -228,7 +267,7 @@ class CSV_File {
             lines.remove();
             row.add(line[0]);
             
-            final ArrayList<String> lstLines = new ArrayList<>();
+            lstLines.clear();
             for (int idx = 1; idx < lSize; idx++) {
                 mat.reset(line[idx]);               
                 if (mat.matches()) {
@@ -249,24 +288,24 @@ class CSV_File {
                     lstLines.add(line[idx].trim());
                 }
             }
-            ret.add(lstLines);
+            if (firstSize == -1) {
+                firstSize = lstLines.size();
+            }
+            data.addRow(lstLines);
         }
         
-        final ArrayList<ArrayList<String>> header = new ArrayList<>();
-        for (ArrayList<String> hdr : table.getHeader()) {
-            if (!hdr.get(0).equals("Obs")) {
-                header.add(hdr);
-            }
+        if (firstSize == -1) {
+            throw new IOException("null data");
         }
-        if (header.size() != ret.get(0).size()) {
+        if (header.size() != firstSize) {
             throw new IOException("header size differs from data line size");
         }
         table.setHeader(header);
         table.setRow(row);
-        table.setLines(ret);
+        table.setData(data);
     }
 
-    private void parseSources(final Deque<String[]> lines,
+    private void parseSources(final Lines lines,
                               final Table table) throws IOException {
         assert lines != null;
         assert table != null;
@@ -320,7 +359,7 @@ class CSV_File {
         table.setSources(sources);
     }
 
-    private void parseLabels(final Deque<String[]> lines,
+    private void parseLabels(final Lines lines,
                              final Table table) throws IOException {
         assert lines != null;
         assert table != null;
@@ -372,7 +411,7 @@ class CSV_File {
         table.setLabels(labels);
     }
 
-    private void parseNotes(final Deque<String[]> lines,
+    private void parseNotes(final Lines lines,
                             final Table table) throws IOException {
         assert lines != null;
         assert table != null;
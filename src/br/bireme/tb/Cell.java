@@ -22,10 +22,7 @@
 
 package br.bireme.tb;
 
-import java.text.NumberFormat;
-import java.text.ParseException;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -34,9 +31,6 @@ import java.util.Map;
  * date: 20130912
  */
 class Cell {
-    static final NumberFormat NFMT = NumberFormat.getInstance(
-                                                        new Locale("pt", "BR"));
-    
     private int idx; // order number of the cell inside a table
     private String title;
     private String subtitle;
@@ -44,6 +38,9 @@ class Cell {
     private List<String> header;
     private String row;
     private String value;
+    private ColumnStore data; // table data holding the value or null
+    private int dataRow;
+    private int dataCol;
     private List<String> sources;
     private List<String> labels;
     private List<String> notes;
@@ -98,13 +95,66 @@ class Cell {
     }
 
     String getValue() {
-        return value;
+        return (data == null) ? value : data.getValue(dataRow, dataCol);
     }
 
     void setValue(final String value) {
-        final String nvalue = (value == null) ? null : 
-                                               value.replaceAll("( +|\\+)", "");
-        this.value = nvalue;
+        this.value = normalizeValue(value);
+        this.data = null;
+    }
+
+    /**
+     * Sets the value as a position of the table data, so the value is
+     * formatted from the stored number without creating a string
+     * @param data the table data
+     * @param row value row
+     * @param col value column
+     */
+    void setValue(final ColumnStore data,
+                  final int row,
+                  final int col) {
+        if (data == null) {
+            throw new NullPointerException("data");
+        }
+        this.value = null;
+        this.data = data;
+        this.dataRow = row;
+        this.dataCol = col;
+    }
+
+    /**
+     * Appends the value as it is shown in the cell pages: numbers are
+     * formatted (see PtBrDecimal) and texts are appended as they are.
+     * @param out where the value will be appended
+     * @return false if there is no value
+     */
+    boolean formatValue(final StringBuilder out) {
+        if (data != null) {
+            return data.format(dataRow, dataCol, out);
+        }
+        if ((value == null) || value.isEmpty()) {
+            return false;
+        }
+        if (!PtBrDecimal.format(value, out)) {
+            out.append(value);
+        }
+        return true;
+    }
+
+    /**
+     * Removes spaces and '+' from a cell value
+     * @param value the raw cell value
+     * @return the cleaned value
+     */
+    static String normalizeValue(final String value) {
+        final String nvalue;
+        if ((value == null) || 
+                      ((value.indexOf(' ') == -1) && (value.indexOf('+') == -1))) {
+            nvalue = value;
+        } else {
+            nvalue = value.replaceAll("( +|\\+)", "");
+        }
+        return nvalue;
     }
 
     List<String> getSources() {
@@ -174,9 +224,10 @@ class Cell {
             builder.append("\nRow:\n\t");
             builder.append(row);
         }
-        if ((value != null) && (!value.isEmpty())) {
+        final String val = getValue();
+        if ((val != null) && (!val.isEmpty())) {
             builder.append("\nValue:\t");
-            builder.append(value);
+            builder.append(val);
         }
         if ((sources != null) && (!sources.isEmpty())) {
             builder.append("\nSource:");
@@ -293,13 +344,7 @@ class Cell {
             builder.append(row);
         }
         builder.append("; ");
-        if ((value != null) && (!value.isEmpty())) {
-            try {
-                builder.append(NFMT.format(NFMT.parse(value).floatValue()));
-            } catch (ParseException ex) {
-                builder.append(value);
-            }
-        }
+        formatValue(builder);
         builder.append(")");
         builder.append("</p>\n");
 
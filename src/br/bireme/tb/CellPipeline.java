@@ -0,0 +1,172 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Renders the cells of the parsed tables using its own pool of worker
+ * threads and hands them to an OutputWriter. Each table is split into
+ * blocks of rows that are saved in parallel. The number of blocks waiting
+ * to be saved is limited, so the crawler threads wait (backpressure) when
+ * the disk is slower than the network.
+ * date: 20261018
+ */
+class CellPipeline {
+    static final int DEFAULT_BLOCK_ROWS = 32;
+
+    private final OutputWriter writer;
+    private final PathRegistry urls;
+    private final int blockRows;
+    private final ExecutorService executor;
+    private final Semaphore permits; // blocks that can still be submitted
+    private final int maxBlocks;
+
+    /**
+     * Constructor
+     * @param writer writer of the created files
+     * @param urls registry where the new created file names will be added
+     * @param threads number of worker threads
+     * @param maxBlocks maximum number of row blocks waiting to be saved
+     * @param blockRows number of rows of a block
+     */
+    CellPipeline(final OutputWriter writer,
+                 final PathRegistry urls,
+                 final int threads,
+                 final int maxBlocks,
+                 final int blockRows) {
+        if (writer == null) {
+            throw new NullPointerException("writer");
+        }
+        if (urls == null) {
+            throw new NullPointerException("urls");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads <= 0");
+        }
+        if (maxBlocks <= 0) {
+            throw new IllegalArgumentException("maxBlocks <= 0");
+        }
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("blockRows <= 0");
+        }
+        this.writer = writer;
+        this.urls = urls;
+        this.blockRows = blockRows;
+        this.maxBlocks = maxBlocks;
+        this.permits = new Semaphore(maxBlocks);
+        this.executor = Executors.newFixedThreadPool(threads, 
+                                                        new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                                         "cells-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits a table to have its cells saved. Waits while there are too many
+     * blocks waiting to be saved.
+     * @param table table used to generate cells
+     * @param elem 
+     * @param tableNum table number used to create the file name
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    void submit(final Table table,
+                final UrlElem elem,
+                final int tableNum) throws IOException {
+        if (table == null) {
+            throw new NullPointerException("table");
+        }
+        if (elem == null) {
+            throw new NullPointerException("elem");
+        }
+        final RIPSA.Context context;
+        try {
+            context = RIPSA.newContext(URLS.newTableCell(table, elem));
+        } catch (IOException ioe) {
+            RunMetrics.get().tableFailed();
+            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                                  .log(Level.SEVERE, "Can not save file.", ioe);
+            return;
+        }
+        final int rows = table.getRow().size();
+        int firstIdx = 1;
+
+        for (int fromRow = 0; fromRow < rows; fromRow += blockRows) {
+            final int from = fromRow;
+            final int to = Math.min(fromRow + blockRows, rows);
+            final int idx = firstIdx;
+
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("cell pipeline interrupted", ex);
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        URLS.genCellsFromRows(table, elem, context, writer, urls,
+                                                   tableNum, from, to, idx);
+                    } catch (RuntimeException ex) {
+                        RunMetrics.get().tableFailed();
+                        Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                                    .log(Level.SEVERE, "cell pipeline error", ex);
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+            firstIdx += URLS.countCells(table, from, to);
+        }
+    }
+
+    /**
+     * Waits until all submitted tables are saved and stops the worker threads
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    void close() throws IOException {
+        try {
+            permits.acquire(maxBlocks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("cell pipeline interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table data stored by column. Numbers are kept as scaled longs (see
+ * PtBrDecimal.parse) and each value has a short code with its kind, sign and
+ * number of stars. Only the values that are not numbers keep their text.
+ * date: 20261018
+ */
+class ColumnStore {
+    // Value kinds (code bits 0-1)
+    private static final int ABSENT = 0;   // row shorter than the table
+    private static final int NUMBER = 1;   // starts with a number
+    private static final int TEXT = 2;     // any other text
+    private static final int REFUSED = 3;  // only dots and/or stars
+    private static final int KIND_MASK = 0x3;
+    private static final int NEGATIVE = 0x4;   // starts with '-' (code bit 2)
+    private static final int STAR_SHIFT = 3;   // stars (code bits 3-15)
+    private static final int MAX_STARS = 0x1FFF;
+
+    private final long[][] numbers; // numbers[column][row]
+    private final short[][] codes;  // codes[column][row]
+    private final Map<Integer,String> texts; // (row * columns + column, text)
+    private int rows;
+
+    /**
+     * Constructor
+     * @param columns number of table columns
+     */
+    ColumnStore(final int columns) {
+        if (columns < 0) {
+            throw new IllegalArgumentException("columns < 0");
+        }
+        this.numbers = new long[columns][16];
+        this.codes = new short[columns][16];
+        this.texts = new HashMap<>();
+        this.rows = 0;
+    }
+
+    /**
+     * Adds a table line. Values beyond the number of columns are ignored.
+     * @param values the line values
+     */
+    void addRow(final List<String> values) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        final int columns = numbers.length;
+
+        if ((columns > 0) && (rows == numbers[0].length)) {
+            final int capacity = rows * 2;
+            for (int col = 0; col < columns; col++) {
+                numbers[col] = Arrays.copyOf(numbers[col], capacity);
+                codes[col] = Arrays.copyOf(codes[col], capacity);
+            }
+        }
+        final int size = Math.min(values.size(), columns);
+        for (int col = 0; col < size; col++) {
+            set(rows, col, Cell.normalizeValue(values.get(col)));
+        }
+        rows++;
+    }
+
+    private void set(final int row,
+                     final int col,
+                     final String value) {
+        assert value != null;
+
+        final int stars = Math.min(URLS.starCount(value), MAX_STARS);
+        int code = stars << STAR_SHIFT;
+
+        if (URLS.isRefused(value)) {
+            code |= REFUSED;
+            texts.put(row * numbers.length + col, value);
+        } else {
+            final long num = PtBrDecimal.parse(value);
+            if (num == PtBrDecimal.NAN) {
+                code |= TEXT;
+                texts.put(row * numbers.length + col, value);
+            } else {
+                code |= NUMBER;
+                if (value.charAt(0) == '-') {
+                    code |= NEGATIVE;
+                }
+                numbers[col][row] = num;
+            }
+        }
+        codes[col][row] = (short)code;
+    }
+
+    int getRowCount() {
+        return rows;
+    }
+
+    int getColumnCount() {
+        return numbers.length;
+    }
+
+    /**
+     * @return false if the line of the value is shorter than the table
+     */
+    boolean isPresent(final int row,
+                      final int col) {
+        return kind(row, col) != ABSENT;
+    }
+
+    /**
+     * @return true if the value is only dots and/or stars (no data)
+     */
+    boolean isRefused(final int row,
+                      final int col) {
+        return kind(row, col) == REFUSED;
+    }
+
+    /**
+     * @return the number of stars of the value (see adjustLabel)
+     */
+    int getStars(final int row,
+                 final int col) {
+        check(row, col);
+        return (codes[col][row] & 0xFFFF) >>> STAR_SHIFT;
+    }
+
+    /**
+     * Gives the text of a value. Numbers are rebuilt without grouping chars
+     * and with at most 3 fraction digits, followed by their stars.
+     * @return the value text or null if it is not present
+     */
+    String getValue(final int row,
+                    final int col) {
+        final int kind = kind(row, col);
+        final String ret;
+
+        if (kind == ABSENT) {
+            ret = null;
+        } else if (kind == NUMBER) {
+            final StringBuilder builder = new StringBuilder();
+            final long num = numbers[col][row];
+            final long abs = Math.abs(num);
+            long fraction = abs % PtBrDecimal.SCALE;
+
+            if ((codes[col][row] & NEGATIVE) != 0) {
+                builder.append('-');
+            }
+            builder.append(abs / PtBrDecimal.SCALE);
+            if (fraction > 0) {
+                long pow = PtBrDecimal.SCALE / 10;
+                builder.append(',');
+                while (fraction > 0) {
+                    builder.append((char)('0' + fraction / pow));
+                    fraction %= pow;
+                    pow /= 10;
+                }
+            }
+            for (int idx = getStars(row, col); idx > 0; idx--) {
+                builder.append('*');
+            }
+            ret = builder.toString();
+        } else {
+            ret = texts.get(row * numbers.length + col);
+        }
+        return ret;
+    }
+
+    /**
+     * Appends the value as it is shown in the cell pages: numbers are
+     * formatted (see PtBrDecimal) straight from the stored number and texts
+     * are appended as they are.
+     * @param out where the value will be appended
+     * @return false if the value is not present or it is empty
+     */
+    boolean format(final int row,
+                   final int col,
+                   final StringBuilder out) {
+        final int kind = kind(row, col);
+
+        if (kind == ABSENT) {
+            return false;
+        }
+        if (kind == NUMBER) {
+            PtBrDecimal.format(numbers[col][row], 
+                                 (codes[col][row] & NEGATIVE) != 0, out);
+        } else {
+            final String text = texts.get(row * numbers.length + col);
+            if (text.isEmpty()) {
+                return false;
+            }
+            // numbers too big to be stored are formatted from their text
+            if (!PtBrDecimal.format(text, out)) {
+                out.append(text);
+            }
+        }
+        return true;
+    }
+
+    private int kind(final int row,
+                     final int col) {
+        check(row, col);
+        return codes[col][row] & KIND_MASK;
+    }
+
+    private void check(final int row,
+                       final int col) {
+        if ((row < 0) || (row >= rows)) {
+            throw new IndexOutOfBoundsException("row=" + row);
+        }
+        if ((col < 0) || (col >= numbers.length)) {
+            throw new IndexOutOfBoundsException("column=" + col);
+        }
+    }
+}
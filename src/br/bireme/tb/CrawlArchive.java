@@ -0,0 +1,297 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive of the request/response pairs of a crawl. In record mode each
+ * response loaded by URLS is appended to the archive, in replay mode the
+ * responses are read from the archive instead of the network.
+ * Each record is (WARC like):
+ * int header length | header (UTF-8 "name: value" lines) |
+ * int payload length | gzipped response content
+ * date: 20261018
+ */
+class CrawlArchive implements Closeable {
+    private static final String VERSION = "TNC/1.0";
+
+    private final FileChannel channel;
+    private final boolean replay;
+    private final Map<String,Long> index; // request key -> record position
+
+    /**
+     * A recorded response
+     */
+    static class Record {
+        int status;
+        String location; // real location of the page (in case of redirect)
+        byte[] body; // response content (content encoding already removed)
+    }
+
+    private CrawlArchive(final FileChannel channel,
+                         final boolean replay) {
+        assert channel != null;
+
+        this.channel = channel;
+        this.replay = replay;
+        this.index = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates a new archive where the responses will be recorded. A previous
+     * archive with the same name is overwritten.
+     * @param file archive file
+     * @return the archive object
+     * @throws IOException 
+     */
+    static CrawlArchive record(final File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        return new CrawlArchive(FileChannel.open(file.toPath(),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING,
+                                StandardOpenOption.WRITE), false);
+    }
+
+    /**
+     * Opens a recorded archive to replay its responses
+     * @param file archive file
+     * @return the archive object
+     * @throws IOException 
+     */
+    static CrawlArchive replay(final File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        final CrawlArchive archive = new CrawlArchive(FileChannel.open(
+                               file.toPath(), StandardOpenOption.READ), true);
+        archive.loadIndex();
+
+        return archive;
+    }
+
+    boolean isReplay() {
+        return replay;
+    }
+
+    /**
+     * Appends a response to the archive
+     * @param url requested url
+     * @param postParams post parameters or null if it is a GET request
+     * @param status response code
+     * @param location real location of the page (in case of redirect)
+     * @param body response content (content encoding already removed)
+     * @throws IOException 
+     */
+    void put(final URL url,
+             final String postParams,
+             final int status,
+             final String location,
+             final byte[] body) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (location == null) {
+            throw new NullPointerException("location");
+        }
+        if (body == null) {
+            throw new NullPointerException("body");
+        }
+        if (replay) {
+            throw new IOException("archive opened in replay mode");
+        }
+        final StringBuilder builder = new StringBuilder();
+        builder.append(VERSION);
+        builder.append("\r\nMethod: ");
+        builder.append((postParams == null) ? "GET" : "POST");
+        builder.append("\r\nURL: ");
+        builder.append(url);
+        if (postParams != null) {
+            builder.append("\r\nParams: ");
+            builder.append(postParams);
+        }
+        builder.append("\r\nStatus: ");
+        builder.append(status);
+        builder.append("\r\nLocation: ");
+        builder.append(location);
+        builder.append("\r\n");
+
+        final byte[] header = builder.toString()
+                                             .getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(payload)) {
+            out.write(body);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + header.length 
+                                                           + payload.size());
+        buffer.putInt(header.length);
+        buffer.put(header);
+        buffer.putInt(payload.size());
+        buffer.put(payload.toByteArray());
+        buffer.flip();
+
+        synchronized (channel) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Looks for a recorded response
+     * @param url requested url
+     * @param postParams post parameters or null if it is a GET request
+     * @return the recorded response or null if there is not one
+     * @throws IOException 
+     */
+    Record get(final URL url,
+               final String postParams) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (!replay) {
+            throw new IOException("archive opened in record mode");
+        }
+        final Long position = index.get(getKey(url.toString(), postParams));
+        if (position == null) {
+            return null;
+        }
+        final int hlen = readInt(position);
+        final Map<String,String> header = readHeader(position + 4, hlen);
+        final int plen = readInt(position + 4 + hlen);
+        final byte[] payload = read(position + 8 + hlen, plen);
+        final Record record = new Record();
+
+        record.status = Integer.parseInt(header.get("Status"));
+        record.location = header.get("Location");
+        try (InputStream in = new GZIPInputStream(
+                                         new ByteArrayInputStream(payload))) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            while (true) {
+                final int len = in.read(buffer);
+                if (len == -1) {
+                    break;
+                }
+                out.write(buffer, 0, len);
+            }
+            record.body = out.toByteArray();
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads only the record headers to find where each record starts. If a
+     * request was recorded more than once, the first record is used.
+     * @throws IOException 
+     */
+    private void loadIndex() throws IOException {
+        final long size = channel.size();
+        long position = 0;
+
+        while (position < size) {
+            final int hlen = readInt(position);
+            final Map<String,String> header = readHeader(position + 4, hlen);
+            final int plen = readInt(position + 4 + hlen);
+            final String key = getKey(header.get("URL"), header.get("Params"));
+
+            if (!index.containsKey(key)) {
+                index.put(key, position);
+            }
+            position += 8 + hlen + plen;
+        }
+    }
+
+    private Map<String,String> readHeader(final long position,
+                                         final int length) throws IOException {
+        final String header = new String(read(position, length),
+                                                        StandardCharsets.UTF_8);
+        final String[] lines = header.split("\r\n");
+        final Map<String,String> ret = new HashMap<>();
+
+        if ((lines.length == 0) || (!lines[0].equals(VERSION))) {
+            throw new IOException("invalid archive record at position "
+                                                                   + position);
+        }
+        for (int idx = 1; idx < lines.length; idx++) {
+            final int colon = lines[idx].indexOf(": ");
+            if (colon == -1) {
+                throw new IOException("invalid archive header line ["
+                                                        + lines[idx] + "]");
+            }
+            ret.put(lines[idx].substring(0, colon),
+                                           lines[idx].substring(colon + 2));
+        }
+        return ret;
+    }
+
+    private int readInt(final long position) throws IOException {
+        return ByteBuffer.wrap(read(position, 4)).getInt();
+    }
+
+    private byte[] read(final long position,
+                        final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        long pos = position;
+
+        while (buffer.hasRemaining()) {
+            final int len = channel.read(buffer, pos);
+            if (len == -1) {
+                throw new IOException("truncated archive");
+            }
+            pos += len;
+        }
+        return buffer.array();
+    }
+
+    private static String getKey(final String url,
+                                 final String postParams) {
+        assert url != null;
+
+        return (postParams == null) ? "GET " + url
+                                    : "POST " + url + "?" + postParams;
+    }
+}
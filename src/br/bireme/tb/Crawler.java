@@ -0,0 +1,410 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+/**
+ * Crawls the IDB html/def pages using a pool of worker threads. Each html
+ * page, def expansion and csv file is loaded by an independent task, so
+ * network round trips are done concurrently. A table whose key has a number
+ * from a previous run is loaded as soon as it is found. New tables are loaded
+ * after all pages were searched and are numbered in the order of their keys,
+ * so the cell file names do not depend on the thread timing. The table cells
+ * are saved by a CellPipeline.
+ * date: 20261018
+ */
+class Crawler {
+    private final OutputSink sink;
+    private final int threads;
+    private final Set<URL> history; // links already searched
+    private final List<UrlElem> tables; // new tables found by the crawl
+    private final TableNumbers tableNums;
+    private final AtomicInteger csvNum;
+    private final Object lock;
+    private ExecutorService executor;
+    private CellPipeline pipeline; // renders and saves the table cells
+    private int pending; // number of submitted but not finished tasks
+
+    /**
+     * Constructor
+     * @param sink where the files will be saved
+     * @param tableNums gives the table numbers used in the file names
+     * @param threads number of worker threads
+     */
+    Crawler(final OutputSink sink,
+            final TableNumbers tableNums,
+            final int threads) {
+        if (sink == null) {
+            throw new NullPointerException("sink");
+        }
+        if (tableNums == null) {
+            throw new NullPointerException("tableNums");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads <= 0");
+        }
+        this.sink = sink;
+        this.threads = threads;
+        this.history = Collections.newSetFromMap(
+                                         new ConcurrentHashMap<URL,Boolean>());
+        this.tables = Collections.synchronizedList(new ArrayList<UrlElem>());
+        this.tableNums = tableNums;
+        this.csvNum = new AtomicInteger();
+        this.lock = new Object();
+    }
+
+    /**
+     * Loads all cvs links from a root html page if possible otherwise find then
+     * recursively. Then the csv s will be loaded and the table cells will be
+     * saved at files. Returns only when all tasks are finished.
+     * @param html root page where the csv will be searched
+     * @return the new created file names. The caller must close it.
+     * @throws IOException
+     */
+    PathRegistry crawl(final URL html) throws IOException {
+        if (html == null) {
+            throw new NullPointerException("html");
+        }
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable,
+                                      "crawler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final PathRegistry paths = new PathRegistry();
+        final OutputWriter writer = new OutputWriter(sink, 
+                     OutputWriter.DEFAULT_WRITERS, OutputWriter.DEFAULT_CAPACITY);
+        pipeline = new CellPipeline(writer, paths, threads, 
+                                  threads * 2, CellPipeline.DEFAULT_BLOCK_ROWS);
+        try {
+            submitHtml(html, null, null, 0);
+            awaitTasks();
+            submitTables();
+            awaitTasks();
+        } catch (IOException | RuntimeException ex) {
+            paths.close();
+            throw ex;
+        } finally {
+            executor.shutdownNow();
+            try {
+                pipeline.close();
+            } finally {
+                writer.close();
+            }
+        }
+        paths.removeAll(writer.getFailed());
+        EventLog.message("\nTotal csv files parsed: " + csvNum.get());
+        EventLog.message("Output " + writer);
+
+        return paths;
+    }
+
+    private void awaitTasks() throws IOException {
+        synchronized (lock) {
+            while (pending > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("crawl interrupted", ex);
+                }
+            }
+        }
+    }
+
+    private void submit(final Runnable task) {
+        assert task != null;
+
+        synchronized (lock) {
+            pending++;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    RunMetrics.get().pageSkipped();
+                    Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                                     .log(Level.SEVERE, "crawler task error", ex);
+                } finally {
+                    synchronized (lock) {
+                        pending--;
+                        if (pending == 0) {
+                            lock.notifyAll();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void submitHtml(final URL html,
+                            final String postParam,
+                            final Map<String,String> tableOptions,
+                            final int level) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                loadCsvFromHtml(html, postParam, tableOptions, level);
+            }
+        });
+    }
+
+    private void submitDef(final URL def) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadCsvFromDef(def);
+                } catch (IOException ioe) {
+                    RunMetrics.get().pageSkipped();
+                    Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                                  .log(Level.SEVERE, 
+                                "skipping loadCsvFromHtml/Def file: " + def, ioe);
+                }
+            }
+        });
+    }
+
+    /**
+     * Numbers the new tables found by the crawl in the order of their keys 
+     * and submits a task to load each one
+     */
+    private void submitTables() {
+        final List<UrlElem> elems = new ArrayList<>(tables);
+
+        Collections.sort(elems, new Comparator<UrlElem>() {
+            @Override
+            public int compare(final UrlElem elem1,
+                               final UrlElem elem2) {
+                final int ret = TableNumbers.getKey(elem1).compareTo(
+                                                  TableNumbers.getKey(elem2));
+                return (ret == 0) ? elem1.compareTo(elem2) : ret;
+            }
+        });
+        for (UrlElem elem : elems) {
+            submitCsv(elem, tableNums.get(elem));
+        }
+    }
+
+    private void submitCsv(final UrlElem elem,
+                           final int tableNum) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                loadCsv(elem, tableNum);
+            }
+        });
+    }
+
+    /**
+     * Loads a html page. If it has a csv link, the csv is loaded by a new task
+     * if its table number is known, otherwise it is kept to be numbered and 
+     * loaded after the crawl. If it has no csv link, each html/def link found
+     * is followed by a new task.
+     * @param html url of the page
+     * @param postParam post parameters or null if it is a GET request
+     * @param tableOptions def tables options or null
+     * @param level depth of the page
+     */
+    private void loadCsvFromHtml(final URL html,
+                                 final String postParam,
+                                 final Map<String,String> tableOptions,
+                                 final int level) {
+        assert html != null;
+        assert level >= 0;
+
+        if (level > URLS.MAX_LEVEL) {
+            return;
+        }
+        // history.add is atomic, so only one task loads a given page
+        if ((!history.add(html)) && (postParam == null)) {
+            return;
+        }
+        final String[] page;
+        try {
+            page = (postParam == null) ? URLS.loadPageGet(html)
+                                       : URLS.loadPagePost(html, postParam);
+        } catch (IOException ioe) {
+            RunMetrics.get().pageSkipped();
+            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                 .log(Level.SEVERE, "error loading file: [" + html
+                                        + "] params: [" + postParam + "]", ioe);
+            return;
+        }
+        final String content = page[1];
+        final Matcher mat = URLS.CSV_PATTERN.matcher(content);
+
+        if (mat.find()) {   // Found a cvs link in that page
+            final Matcher mat2 = URLS.QUALIF_REC_PATTERN.matcher(content);
+            if (mat2.find()) {
+                try {
+                    final UrlElem elem = new UrlElem();
+                    elem.father = html;
+                    elem.fatherParams = postParam;
+                    elem.tableOptions = tableOptions;
+                    elem.csv = URLS.withDomain(html, mat.group(1));
+                    elem.qualifRec = URLS.withDomain(html, mat2.group(1));
+
+                    final Integer num = tableNums.getKnown(elem);
+                    if (num == null) {
+                        tables.add(elem);
+                    } else {
+                        submitCsv(elem, num);
+                    }
+                } catch (IOException ioe) {
+                    RunMetrics.get().csvSkipped();
+                    Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                          .log(Level.SEVERE, "skipping file: " + html, ioe);
+                }
+            }
+        } else {            // Did not find a cvs link in that page
+            if (postParam != null) {
+                RunMetrics.get().tableFailed();
+                Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                      .log(Level.SEVERE,
+                 " skipping loadCsvFromHtml/Def file: " + html +
+                 " params:" + postParam +
+                 "\nCSV link not found into def page [" +
+                 URLS.findErrorMessage(content) + "]");
+            }
+            final Set<URL> urls;
+            try {
+                urls = URLS.getPageDefHtmlUrls(new URL(page[0]), content,
+                                                                      history);
+            } catch (IOException ioe) {
+                RunMetrics.get().pageSkipped();
+                Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                      .log(Level.SEVERE, "skipping loadCsvFromHtml/Def file: "
+                                                                 + html, ioe);
+                return;
+            }
+            for (URL url : urls) {
+                if (url.getFile().endsWith(".def")) {
+                    submitDef(url);
+                } else {
+                    submitHtml(url, null, null, level + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a csv file and hands its table to the cell pipeline
+     * @param elem the csv url and its related information
+     * @param tableNum table number used in the cell file names
+     */
+    private void loadCsv(final UrlElem elem,
+                         final int tableNum) {
+        assert elem != null;
+
+        try {
+            final Table table = URLS.loadTableGet(elem.csv, 
+                                                          URLS.CSV_SEPARATOR);
+
+            pipeline.submit(table, elem, tableNum);
+            csvNum.incrementAndGet();
+        } catch (Exception ex) {
+            RunMetrics.get().csvSkipped();
+            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                           .log(Level.SEVERE, "skipping file: " + elem.csv, ex);
+        }
+    }
+
+    /**
+     * Extracts cvs links by combining fields from a def file. The combinations
+     * are generated on demand and at most 'threads' of them are loaded at the
+     * same time: each finished combination task submits the next one.
+     * @param def url of the def page from which the cvs will be extracted
+     * @throws IOException
+     */
+    private void loadCsvFromDef(final URL def) throws IOException {
+        assert def != null;
+
+        final Iterator<DEF_File.DefUrls> urls = 
+                                         new DEF_File().generateDefUrls(def);
+
+        for (int idx = 0; idx < threads; idx++) {
+            if (!submitNextDef(urls)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Submits a task to load the next def form combination
+     * @param urls def form combinations. Shared by the tasks of a def file.
+     * @return false if there are no more combinations
+     */
+    private boolean submitNextDef(final Iterator<DEF_File.DefUrls> urls) {
+        assert urls != null;
+
+        final DEF_File.DefUrls url;
+        synchronized (urls) {
+            if (!urls.hasNext()) {
+                return false;
+            }
+            url = urls.next();
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadCsvFromHtml(new URL(url.url), url.postParams,
+                                                 url.options, URLS.MAX_LEVEL);
+                } catch (IOException ioe) {
+                    RunMetrics.get().pageSkipped();
+                    Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                        .log(Level.SEVERE, "skipping loadCsvFromHtml file: "
+                                                                + url.url, ioe);
+                } finally {
+                    submitNextDef(urls);
+                }
+            }
+        });
+        return true;
+    }
+}
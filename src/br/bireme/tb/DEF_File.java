@@ -25,9 +25,13 @@ package br.bireme.tb;
 import java.io.IOException;
 import java.net.URL;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -40,17 +44,6 @@ import java.util.regex.Pattern;
  * date: 20130913
  */
 class DEF_File {
-    private static final Pattern FORM_PATTERN = Pattern.compile(
-                                   "(?i)<FORM.+?ACTION=\\\"([^\\\"]+)\\\".*?>");
-    private static final Pattern SELECT_PATTERN = Pattern.compile(
-                                      "(?i)(?s)<SELECT ([^>]+)>(.+?)</SELECT>");
-    private static final Pattern ID_PATTERN = Pattern.compile(
-                                                         "(?i)ID=\"([^\"]+)\"");
-    private static final Pattern NAME_PATTERN = Pattern.compile(
-                                                       "(?i)NAME=\"([^\"]+)\"");
-    private static final Pattern OPTION_PATTERN = Pattern.compile(
-                           "(?i)<OPTION.+?VALUE=\"([^\"]+)\".*?>(.+?)(<|\n|$)");
-    
     /**
      * Pssible values of a selectable options table
      */
@@ -60,6 +53,14 @@ class DEF_File {
         String id;
         Map<String,String> options; // value, label
     }
+
+    /**
+     * Def form target url and selectable options
+     */
+    class DefForm {
+        String action;
+        Map<String,SelectableOptions> selects; // id, options
+    }
     
     class DefUrls implements Comparable<DefUrls> {
 
@@ -89,101 +90,354 @@ class DEF_File {
         }
     }
 
-    Set<DefUrls> generateDefUrls(final URL url) throws IOException {
+    /**
+     * Generates the urls of all def form combinations. The combinations are
+     * created only when they are requested, so the iteration can start
+     * before all of them are known.
+     * @param url url of the def page
+     * @return an iterator over the def form combinations
+     * @throws IOException
+     */
+    Iterator<DefUrls> generateDefUrls(final URL url) throws IOException {
         if (url == null) {
             throw new NullPointerException("url");
         }
-        final Set<DefUrls> set = new TreeSet<>();
-        final String content = URLS.loadPageGet(url)[1];
-        final Map<String,SelectableOptions> selectOpts = getSelectOptions(content);
-        final Set<Map<String,Map.Entry<String,String>>> postOpts = 
+        return generateDefUrls(url, URLS.loadPageGet(url)[1]);
+    }
+
+    /**
+     * Generates the urls of all def form combinations of an already loaded
+     * def page
+     * @param url url of the def page
+     * @param content def page content
+     * @return an iterator over the def form combinations
+     * @throws IOException
+     */
+    Iterator<DefUrls> generateDefUrls(final URL url,
+                                      final String content) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        final DefForm form = parseForm(content);
+        if (form.action == null) {
+            throw new IOException("form target (url) not found");
+        }
+        final Map<String,SelectableOptions> selectOpts = form.selects;
+        final Iterator<Map<String,Map.Entry<String,String>>> postOpts = 
                                                 generatePostOptions(selectOpts);
-        final String target = getFormTarget(content).trim();
+        final String target = form.action.trim();
         final String tgt = (target.endsWith("/"))
                               ? target.substring(0, target.length()-1) : target;
-        final URL durl = URLS.withDomain(url, tgt);
+        final String durl = URLS.withDomain(url, tgt).toString();
         final Map<String,String> nameLabel = new HashMap<>();
         
         for (SelectableOptions selOpt : selectOpts.values()) {
             nameLabel.put(selOpt.name, selOpt.label);
         }
 
-        for (Map<String,Map.Entry<String,String>> map : postOpts) {
-            final StringBuilder builder = new StringBuilder();
-            final Map<String,String> options = new TreeMap<>();
-            boolean first = true;
-            for (Map.Entry<String,Map.Entry<String,String>> entry 
+        return new Iterator<DefUrls>() {
+            @Override
+            public boolean hasNext() {
+                return postOpts.hasNext();
+            }
+
+            @Override
+            public DefUrls next() {
+                final Map<String,Map.Entry<String,String>> map = postOpts.next();
+                RunMetrics.get().defCombination();
+                final StringBuilder builder = new StringBuilder();
+                final Map<String,String> options = new TreeMap<>();
+                boolean first = true;
+                for (Map.Entry<String,Map.Entry<String,String>> entry 
                                                              : map.entrySet()) {
-                if (first) {
-                    first = false;
-                } else {
-                    builder.append("&");
+                    if (first) {
+                        first = false;
+                    } else {
+                        builder.append("&");
+                    }
+                    final String optLabel = entry.getKey();
+                    final Map.Entry<String,String> optValue = entry.getValue();
+                    builder.append(optLabel);
+                    builder.append("=");
+                    builder.append(optValue.getKey());
+                    options.put(nameLabel.get(optLabel), optValue.getValue());
                 }
-                final String optLabel = entry.getKey();
-                final Map.Entry<String,String> optValue = entry.getValue();
-                builder.append(optLabel);
-                builder.append("=");
-                builder.append(optValue.getKey());
-                options.put(nameLabel.get(optLabel), optValue.getValue());
+                final DefUrls def = new DefUrls();
+                def.url = durl;
+                def.postParams = builder.toString() 
+                                               + "&formato=table&mostre=Mostra";
+                def.options = options;
+
+                return def;
             }
-            final DefUrls def = new DefUrls();
-            def.url = durl.toString();
-            def.postParams = builder.toString() + "&formato=table&mostre=Mostra";
-            def.options = options;
-            set.add(def);
-        }
 
-        return set;
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
     
-    private Map<String,SelectableOptions> getSelectOptions(final String content) 
+    Map<String,SelectableOptions> getSelectOptions(final String content) 
                                                             throws IOException {
         assert content != null;
 
+        return parseForm(content).selects;
+    }
+
+    /**
+     * Scans the def page once, collecting the form target, the selects with
+     * their options and the select labels. Only the FORM, SELECT, OPTION and
+     * LABEL tags are recognized, everything else is skipped.
+     * @param content def page content
+     * @return the def form
+     * @throws IOException if a select has no id or name attribute or no label
+     */
+    DefForm parseForm(final String content) throws IOException {
+        assert content != null;
+
+        final DefForm form = new DefForm();
+        final List<SelectableOptions> selects = new ArrayList<>();
+        final Map<String,String> labels =     // (label for, label text)
+                                  new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final int len = content.length();
+        SelectableOptions select = null;
+        int pos = content.indexOf('<');
+
+        while (pos != -1) {
+            int next = pos + 1;
+
+            if (isTag(content, pos, "<OPTION")) {
+                final int end = content.indexOf('>', pos);
+                if (end == -1) {
+                    break;
+                }
+                final String value = (select == null) ? null
+                                  : getAttribute(content, pos + 7, end, "VALUE");
+                // the option label goes up to the next tag or line end
+                if ((value != null) && (end + 1 < len) 
+                                          && (content.charAt(end + 1) != '\n')) {
+                    int lend = end + 2;
+                    while (lend < len) {
+                        final char ch = content.charAt(lend);
+                        if ((ch == '<') || (ch == '\n')) {
+                            break;
+                        }
+                        lend++;
+                    }
+                    select.options.put(value.trim(), 
+                          content.substring(end + 1, lend).trim()); // (value, label)
+                }
+                next = end + 1;
+            } else if (isTag(content, pos, "<SELECT")) {
+                final int end = content.indexOf('>', pos);
+                if (end == -1) {
+                    break;
+                }
+                select = new SelectableOptions();
+                select.id = getAttribute(content, pos + 7, end, "ID");
+                if (select.id == null) {
+                    throw new IOException("id attr not found: [" 
+                                  + content.substring(pos + 7, end).trim() + "]");
+                }
+                select.name = getAttribute(content, pos + 7, end, "NAME");
+                if (select.name == null) {
+                    throw new IOException("name attr not found: [" 
+                                  + content.substring(pos + 7, end).trim() + "]");
+                }
+                select.options = new HashMap<>();
+                next = end + 1;
+            } else if (isTag(content, pos, "</SELECT")) {
+                if (select != null) {
+                    selects.add(select);
+                    select = null;
+                }
+            } else if (isTag(content, pos, "<LABEL")) {
+                final int end = content.indexOf('>', pos);
+                if (end == -1) {
+                    break;
+                }
+                final String labelFor = getAttribute(content, pos + 6, end, 
+                                                                         "FOR");
+                if ((labelFor != null) && !labels.containsKey(labelFor)) {
+                    final int close = indexOfTag(content, "</LABEL>", end + 1);
+                    if (close != -1) {
+                        labels.put(labelFor, getLabel(content, end + 1, close));
+                    }
+                }
+                next = end + 1;
+            } else if ((form.action == null) && isTag(content, pos, "<FORM")) {
+                final int end = content.indexOf('>', pos);
+                if (end == -1) {
+                    break;
+                }
+                form.action = getAttribute(content, pos + 5, end, "ACTION");
+                next = end + 1;
+            }
+            pos = content.indexOf('<', next);
+        }
+
         final Map<String,SelectableOptions> ret = new HashMap<>();
-        final Matcher matSel = SELECT_PATTERN.matcher(content);
-
-        while (matSel.find()) {
-            final SelectableOptions opt = new SelectableOptions();
-            final String selAtt = matSel.group(1);
-            final Matcher matId = ID_PATTERN.matcher(selAtt);
-            final Matcher matName = NAME_PATTERN.matcher(selAtt);
-            if (!matId.find()) {
-                throw new IOException("id attr not found: [" + selAtt + "]");
+        for (SelectableOptions opt : selects) {
+            opt.label = labels.get(opt.id);
+            if (opt.label == null) {
+                throw new IOException("Select label not found.");
+            }
+            ret.put(opt.id, opt);  // (id, options)
+        }
+        form.selects = ret;
+
+        return form;
+    }
+
+    /**
+     * Checks if there is a tag with the given name (case insensitive) at a
+     * position of the content
+     */
+    private static boolean isTag(final String content,
+                                 final int pos,
+                                 final String tag) {
+        assert content != null;
+        assert pos >= 0;
+        assert tag != null;
+
+        final int end = pos + tag.length();
+        if (!content.regionMatches(true, pos, tag, 0, tag.length())) {
+            return false;
+        }
+        if (end == content.length()) {
+            return true;
+        }
+        final char ch = content.charAt(end);
+
+        return (ch == '>') || (ch == '/') || Character.isWhitespace(ch);
+    }
+
+    /**
+     * Finds the position of a tag (case insensitive)
+     * @return the tag position or -1 if it was not found
+     */
+    private static int indexOfTag(final String content,
+                                  final String tag,
+                                  final int from) {
+        assert content != null;
+        assert tag != null;
+
+        int pos = content.indexOf('<', from);
+        while ((pos != -1) 
+                      && !content.regionMatches(true, pos, tag, 0, tag.length())) {
+            pos = content.indexOf('<', pos + 1);
+        }
+        return pos;
+    }
+
+    /**
+     * Gets the value of a tag attribute
+     * @param content page content
+     * @param from position of the first char after the tag name
+     * @param to position of the tag closing '>'
+     * @param name attribute name (case insensitive)
+     * @return the attribute value or null if it is absent or empty
+     */
+    private static String getAttribute(final String content,
+                                       final int from,
+                                       final int to,
+                                       final String name) {
+        assert content != null;
+        assert from >= 0;
+        assert to >= 0;
+        assert name != null;
+
+        int pos = from;
+        while (pos < to) {
+            while ((pos < to) && Character.isWhitespace(content.charAt(pos))) {
+                pos++;
             }
-            opt.id = matId.group(1);
-            if (!matName.find()) {
-                throw new IOException("name attr not found: [" + selAtt + "]");
+            final int nameBegin = pos;
+            while ((pos < to) && (content.charAt(pos) != '=')
+                              && !Character.isWhitespace(content.charAt(pos))) {
+                pos++;
             }
-            opt.name = matName.group(1);
-            
-            /*final Pattern frameLabelPat = Pattern.compile(
-                  "(?i)(?s)<LABEL for=\"" + opt.id + 
-                                             "\">(<b>)?(.+?)(</b>)?</LABEL>");*/
-            final Pattern frameLabelPat = Pattern.compile(
-                  "(?i)(?s)<LABEL for=\"" + opt.id + 
-                                       "\">(<[^>]+>)?(.+?)(</[^>]+>)?</LABEL>");
-            final Matcher matLab = frameLabelPat.matcher(content);
-            if (!matLab.find()) {
-                throw new IOException("Select label not found.");
+            final int nameEnd = pos;
+            while ((pos < to) && Character.isWhitespace(content.charAt(pos))) {
+                pos++;
+            }
+            if ((pos < to) && (content.charAt(pos) == '=')) {
+                pos++;
+                while ((pos < to) 
+                               && Character.isWhitespace(content.charAt(pos))) {
+                    pos++;
+                }
+                final int valBegin;
+                final int valEnd;
+                if ((pos < to) && ((content.charAt(pos) == '"') 
+                                           || (content.charAt(pos) == '\''))) {
+                    final int quote = content.indexOf(content.charAt(pos), 
+                                                                      pos + 1);
+                    valBegin = pos + 1;
+                    valEnd = ((quote == -1) || (quote > to)) ? to : quote;
+                    pos = valEnd + 1;
+                } else {
+                    valBegin = pos;
+                    while ((pos < to) 
+                              && !Character.isWhitespace(content.charAt(pos))) {
+                        pos++;
+                    }
+                    valEnd = pos;
+                }
+                if ((nameEnd - nameBegin == name.length()) && content
+                        .regionMatches(true, nameBegin, name, 0, name.length())) {
+                    return (valEnd > valBegin) 
+                                      ? content.substring(valBegin, valEnd) : null;
+                }
             }
-            opt.label = matLab.group(2).replace('\n', ' ').trim();
-            
-            final String selectContent = matSel.group(2);
-            final Matcher mat2 = OPTION_PATTERN.matcher(selectContent);
-            final Map<String,String> optMap = new HashMap<>();
-
-            while (mat2.find()) {
-                optMap.put(mat2.group(1).trim(), 
-                           mat2.group(2).trim()); // (value, label)
+        }
+        return null;
+    }
+
+    /**
+     * Gets the text of a label without its enclosing tags, as in 
+     * {@code <LABEL for="L"><b>Linha</b></LABEL>}
+     * @param content page content
+     * @param begin position of the first char after the LABEL tag
+     * @param end position of the LABEL closing tag
+     * @return the label text
+     */
+    private static String getLabel(final String content,
+                                   final int begin,
+                                   final int end) {
+        assert content != null;
+        assert begin <= end;
+
+        int from = begin;
+        int to = end;
+
+        if ((from < to) && (content.charAt(from) == '<')) {
+            final int gt = content.indexOf('>', from);
+            if ((gt > from + 1) && (gt + 1 < to)) {
+                from = gt + 1;
+            }
+        }
+        if ((to - from > 1) && (content.charAt(to - 1) == '>')) {
+            final int lt = content.lastIndexOf("</", to - 2);
+            if ((lt > from) && (lt + 2 < to - 1) 
+                                       && (content.indexOf('>', lt) == to - 1)) {
+                to = lt;
             }
-            opt.options = optMap;
-            ret.put(opt.id, opt);  // (id, options)
         }
-        return ret;
+        return content.substring(from, to).replace('\n', ' ').trim();
     }
-    
-    private Set<Map<String,Map.Entry<String,String>>> generatePostOptions(
+
+    /**
+     * Combines the line, column, content and time options of a def form. The
+     * combinations are created one at a time while the iterator is consumed.
+     * @param selectOptions def form selectable options
+     * @return an iterator over the combinations (select name, (value, label))
+     */
+    Iterator<Map<String,Map.Entry<String,String>>> generatePostOptions(
                            final Map<String, SelectableOptions> selectOptions) {
 
         assert selectOptions != null;
@@ -196,47 +450,100 @@ class DEF_File {
         final String ALL_CATEGORIES = "TODAS_AS_CATEGORIAS__";
         final String ALL_CATEGORIES_LABEL = "Todas as categorias";
 
-        final Set<Map<String,Map.Entry<String,String>>> set = new HashSet<>();
         final SelectableOptions line = selectOptions.get("L");
         final SelectableOptions columm = selectOptions.get("C");
         final SelectableOptions content = selectOptions.get("I");
         final SelectableOptions time = filterDates(selectOptions.get("A"), 1);      
+        final Map<String,Map.Entry<String,String>> others = new HashMap<>();
 
         line.options.remove(REGION_AND_FEDERATION_UNIT);
         line.options.remove(YEAR);
-        
-        for (Map.Entry<String,String> lineElem : line.options.entrySet()) {
-            for (Map.Entry<String,String> colElem : 
-                                     filterOptions(columm.options).entrySet()) {
-                if (lineElem.getKey().equals(colElem.getKey())) {
-                    continue;
-                }
-                for (Map.Entry<String,String> contentElem : 
-                                                   content.options.entrySet()) {
-                    for (Map.Entry<String,String> timeElem : 
-                                                      time.options.entrySet()) {
-                        final Map<String,Map.Entry<String,String>> map = 
-                                                                new HashMap<>();
-                        map.put(line.name, lineElem);
-                        map.put(columm.name, colElem);
-                        map.put(content.name, contentElem);
-                        map.put(time.name, timeElem);
-                        for (Map.Entry<String,SelectableOptions> entry : 
+
+        for (Map.Entry<String,SelectableOptions> entry : 
                                                      selectOptions.entrySet()) {
-                            final String id = entry.getKey();
-                            if ((!id.equals("L")) && (!id.equals("C")) && 
-                                (!id.equals("I")) && (!id.equals("A"))) {
-                                map.put(entry.getValue().name, 
+            final String id = entry.getKey();
+            if ((!id.equals("L")) && (!id.equals("C")) && 
+                (!id.equals("I")) && (!id.equals("A"))) {
+                others.put(entry.getValue().name, 
                                   new AbstractMap.SimpleEntry<>(ALL_CATEGORIES,
                                                          ALL_CATEGORIES_LABEL));
-                            }
-                        }
-                        set.add(map);
+            }
+        }
+
+        final List<Map.Entry<String,String>> lineElems = 
+                                     new ArrayList<>(line.options.entrySet());
+        final List<Map.Entry<String,String>> colElems = 
+                        new ArrayList<>(filterOptions(columm.options).entrySet());
+        final List<Map.Entry<String,String>> contentElems = 
+                                  new ArrayList<>(content.options.entrySet());
+        final List<Map.Entry<String,String>> timeElems = 
+                                     new ArrayList<>(time.options.entrySet());
+
+        return new Iterator<Map<String,Map.Entry<String,String>>>() {
+            // current position (line, column, content, time)
+            private final int[] pos = new int[4];
+            private final int[] size = {lineElems.size(), colElems.size(),
+                                        contentElems.size(), timeElems.size()};
+            private boolean ready = false;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready) {
+                    ready = true;
+                    skipInvalid();
+                }
+                return pos[0] < size[0];
+            }
+
+            @Override
+            public Map<String,Map.Entry<String,String>> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Map<String,Map.Entry<String,String>> map = 
+                                                                new HashMap<>();
+                map.put(line.name, lineElems.get(pos[0]));
+                map.put(columm.name, colElems.get(pos[1]));
+                map.put(content.name, contentElems.get(pos[2]));
+                map.put(time.name, timeElems.get(pos[3]));
+                map.putAll(others);
+
+                increment(3);
+                skipInvalid();
+
+                return map;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            // Moves to the next combination of positions
+            private void increment(final int idx) {
+                int cur = idx;
+                while (cur > 0) {
+                    if (++pos[cur] < size[cur]) {
+                        return;
                     }
+                    pos[cur] = 0;
+                    cur--;
                 }
+                pos[0]++;
             }
-        }
-        return set;
+
+            // Skips combinations with empty options or same line and column
+            private void skipInvalid() {
+                if ((size[1] == 0) || (size[2] == 0) || (size[3] == 0)) {
+                    pos[0] = size[0];
+                    return;
+                }
+                while ((pos[0] < size[0]) && lineElems.get(pos[0]).getKey()
+                                      .equals(colElems.get(pos[1]).getKey())) {
+                    increment(1);
+                }
+            }
+        };
     }
     
     private Map<String,String> filterOptions(final Map<String,String> in) {
@@ -260,18 +567,8 @@ class DEF_File {
         return optMap;
     }
     
-    private String getFormTarget(final String content) throws IOException {
-        assert content != null;
-
-        final Matcher mat = FORM_PATTERN.matcher(content);
-        if (!mat.find()) {
-            throw new IOException("form target (url) not found");
-        }
-        return mat.group(1);
-    }
-    
-    private SelectableOptions filterDates(final SelectableOptions dates,             
-                                          final int max) {    
+    SelectableOptions filterDates(final SelectableOptions dates,             
+                                  final int max) {    
         assert dates != null;
         assert max >= 1;
         
@@ -354,7 +651,10 @@ class DEF_File {
                 "http://tabnet.datasus.gov.br/cgi/deftohtm.exe?idb2011/a01.def";
         final DEF_File def = new DEF_File();
         
-        for (DefUrls urls: def.generateDefUrls(new URL(url))) {
+        final Iterator<DefUrls> it = def.generateDefUrls(new URL(url));
+
+        while (it.hasNext()) {
+            final DefUrls urls = it.next();
             System.out.println(urls.url + "[" + urls.postParams + "]");
         }
     }
@@ -0,0 +1,111 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes each output file into its own file under a root directory.
+ * Directories are created only the first time they are used.
+ * date: 20261018
+ */
+class DirectorySink implements OutputSink {
+    private final File root;
+    private final boolean overwrite;  // replace existing files
+    private final Set<String> dirs;   // directories already created
+
+    /**
+     * Constructor
+     * @param root directory where the files will be written
+     */
+    DirectorySink(final File root) {
+        this(root, false);
+    }
+
+    /**
+     * Constructor
+     * @param root directory where the files will be written
+     * @param overwrite if true existing files are replaced, otherwise
+     * writing an existing file is an error
+     */
+    DirectorySink(final File root,
+                  final boolean overwrite) {
+        if (root == null) {
+            throw new NullPointerException("root");
+        }
+        this.root = root;
+        this.overwrite = overwrite;
+        this.dirs = Collections.newSetFromMap(
+                                      new ConcurrentHashMap<String,Boolean>());
+    }
+
+    @Override
+    public void write(final String path,
+                      final ByteBuffer content) throws IOException {
+        if (path == null) {
+            throw new NullPointerException("path");
+        }
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        final File file = new File(root, path);
+        final int slash = path.lastIndexOf('/');
+
+        if (slash > 0) {
+            final String dir = path.substring(0, slash);
+            if (!dirs.contains(dir)) {
+                final File dpath = file.getParentFile();
+                // other thread can create the same directory at the same time
+                if ((!dpath.mkdirs()) && (!dpath.isDirectory())) {
+                    throw new IOException("directory [" + dpath.getPath()
+                                                          + "] creation error");
+                }
+                dirs.add(dir);
+            }
+        }
+        try (FileChannel channel = overwrite 
+            ? FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                   StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+            : FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                                                   StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        } catch (FileAlreadyExistsException ex) {
+            throw new IOException("File[" + file.getPath() 
+                                                     + "] already exists", ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
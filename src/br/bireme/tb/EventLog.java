@@ -0,0 +1,488 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Structured event log of a run. Events are written as json lines (one
+ * object per line) by a background thread. Producers only put the event into
+ * a lock free ring buffer. If the buffer is full, the high volume info events
+ * are dropped and counted, while messages and log records wait for a free 
+ * slot (or go to the standard error if the background thread is gone), so
+ * they are never lost. The background thread also owns the console: it 
+ * prints the messages and, if enabled, a one line progress status redrawn in
+ * place.
+ * While the log is not open, info events are ignored and messages go to the
+ * standard output.
+ * date: 20261018
+ */
+final class EventLog {
+    static final int DEFAULT_CAPACITY = 8192; // power of two
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long PROGRESS_NANOS = 
+                                          TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long FULL_WAIT_NANOS = 
+                                          TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static volatile EventLog current = null;
+
+    // ring buffer (multiple producers, single consumer)
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;   // next position to be claimed
+    private long head;               // next position to be read (consumer)
+
+    private final AtomicLong dropped;
+    private final BufferedWriter out;
+    private final PrintStream console;
+    private final boolean progress;
+    private final SimpleDateFormat dateFormat;
+    private final StringBuilder builder;
+    private final Thread thread;
+    private final long start;
+    private volatile boolean closing;
+    private int progressLength;     // length of the progress line on console
+
+    /**
+     * A log event
+     */
+    private static class Event {
+        final long time;
+        final String level;
+        final String type;
+        final String thread;
+        final Object[] fields;
+        final Throwable error;
+
+        Event(final String level,
+              final String type,
+              final Throwable error,
+              final Object[] fields) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.type = type;
+            this.thread = Thread.currentThread().getName();
+            this.fields = fields;
+            this.error = error;
+        }
+    }
+
+    private EventLog(final File file,
+                     final boolean progress,
+                     final int capacity) throws IOException {
+        assert file != null;
+        assert Integer.bitCount(capacity) == 1;
+
+        this.slots = new Event[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int idx = 0; idx < capacity; idx++) {
+            sequences.set(idx, idx);
+        }
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.out = Files.newBufferedWriter(file.toPath(), 
+                                                       StandardCharsets.UTF_8);
+        this.console = System.out;
+        this.progress = progress;
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.builder = new StringBuilder();
+        this.start = System.nanoTime();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "event-log");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Opens the event log. If it is already open, it is closed first.
+     * @param file json lines file. If it exists, it is replaced.
+     * @param progress if true a progress line is shown on the console
+     * @throws IOException 
+     */
+    static synchronized void open(final File file,
+                                  final boolean progress) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        close();
+        final EventLog log = new EventLog(file, progress, DEFAULT_CAPACITY);
+        log.thread.start();
+        current = log;
+    }
+
+    /**
+     * Writes the pending events and closes the event log
+     */
+    static synchronized void close() {
+        final EventLog log = current;
+
+        if (log != null) {
+            current = null;
+            log.closing = true;
+            LockSupport.unpark(log.thread);
+            try {
+                log.thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return true if the event log is open
+     */
+    static boolean isOpen() {
+        return current != null;
+    }
+
+    /**
+     * Logs an information event. It is dropped if the buffer is full.
+     * @param type event type
+     * @param fields event fields (name, value, name, value, ...)
+     */
+    static void info(final String type,
+                     final Object... fields) {
+        final EventLog log = current;
+
+        if (log != null) {
+            log.offer(new Event("INFO", type, null, fields), true);
+        }
+    }
+
+    /**
+     * Shows a message on the console and logs it
+     * @param text the message
+     */
+    static void message(final String text) {
+        final EventLog log = current;
+
+        if (log == null) {
+            System.out.println(text);
+        } else {
+            log.offer(new Event("INFO", "message", null, 
+                                           new Object[] {"text", text}), false);
+        }
+    }
+
+    /**
+     * @return a java.util.logging handler that writes the log records into 
+     * the event log (type "log")
+     */
+    static Handler newHandler() {
+        return new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                final EventLog log = current;
+
+                if ((log != null) && isLoggable(record)) {
+                    final Level level = record.getLevel();
+                    final String lname = (level.intValue() >= 
+                            Level.SEVERE.intValue()) ? "ERROR" :
+                            (level.intValue() >= Level.WARNING.intValue()) 
+                                                            ? "WARN" : "INFO";
+                    String msg = record.getMessage();
+                    if ((msg != null) && (record.getParameters() != null)) {
+                        msg = MessageFormat.format(msg, 
+                                                      record.getParameters());
+                    }
+                    log.offer(new Event(lname, "log", record.getThrown(),
+                                           new Object[] {"text", msg}), false);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Puts an event into the ring buffer
+     * @param event the event
+     * @param droppable if true the event is dropped if the buffer is full,
+     * otherwise the caller waits for a free slot
+     */
+    private void offer(final Event event,
+                       final boolean droppable) {
+        if (tryOffer(event)) {
+            return;
+        }
+        if (droppable) {
+            dropped.incrementAndGet();
+            return;
+        }
+        LockSupport.unpark(thread);
+        while (!tryOffer(event)) {
+            if (closing || !thread.isAlive()) {
+                // nobody will free a slot
+                System.err.println(event.level + " " + event.type + ": " 
+                      + (((event.fields == null) || (event.fields.length < 2)) 
+                                                     ? "" : event.fields[1])
+                      + ((event.error == null) ? "" : " " + event.error));
+                return;
+            }
+            LockSupport.parkNanos(FULL_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Puts an event into the ring buffer if it is not full
+     * @param event the event
+     * @return false if the buffer is full
+     */
+    private boolean tryOffer(final Event event) {
+        long pos = tail.get();
+
+        while (true) {
+            final long diff = sequences.get((int)pos & mask) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        final int idx = (int)pos & mask;
+        slots[idx] = event;
+        sequences.lazySet(idx, pos + 1);
+
+        return true;
+    }
+
+    /**
+     * Takes the next event from the ring buffer (consumer thread only)
+     * @return the event or null if there is no event
+     */
+    private Event poll() {
+        final int idx = (int)head & mask;
+
+        if (sequences.get(idx) != head + 1) {
+            return null;
+        }
+        final Event event = slots[idx];
+        slots[idx] = null;
+        sequences.lazySet(idx, head + mask + 1);
+        head++;
+
+        return event;
+    }
+
+    /**
+     * Background thread loop
+     */
+    private void consume() {
+        long lastProgress = 0;
+
+        try {
+            while (true) {
+                final boolean last = closing;
+                Event event;
+                while ((event = poll()) != null) {
+                    write(event);
+                }
+                out.flush();
+                final long now = System.nanoTime();
+                if (progress && (last || (now - lastProgress >= PROGRESS_NANOS))) {
+                    showProgress();
+                    lastProgress = now;
+                }
+                if (last) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+            if (progressLength > 0) {
+                console.println();
+            }
+            if (dropped.get() > 0) {
+                write(new Event("WARN", "dropped", null, 
+                                      new Object[] {"events", dropped.get()}));
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace(console);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                ioe.printStackTrace(console);
+            }
+        }
+    }
+
+    /**
+     * Writes an event as a json line. Messages are also shown on the console.
+     * @param event the event
+     * @throws IOException 
+     */
+    private void write(final Event event) throws IOException {
+        assert event != null;
+
+        builder.setLength(0);
+        builder.append("{\"time\":\"");
+        builder.append(dateFormat.format(new Date(event.time)));
+        builder.append("\",\"level\":\"").append(event.level);
+        builder.append("\",\"type\":");
+        appendValue(event.type);
+        builder.append(",\"thread\":");
+        appendValue(event.thread);
+        final Object[] fields = event.fields;
+        if (fields != null) {
+            for (int idx = 0; idx + 1 < fields.length; idx += 2) {
+                builder.append(',');
+                appendValue(String.valueOf(fields[idx]));
+                builder.append(':');
+                appendValue(fields[idx + 1]);
+            }
+        }
+        if (event.error != null) {
+            builder.append(",\"error\":");
+            appendValue(event.error.toString());
+            final StackTraceElement[] trace = event.error.getStackTrace();
+            if (trace.length > 0) {
+                builder.append(",\"at\":");
+                appendValue(trace[0].toString());
+            }
+            Throwable cause = event.error.getCause();
+            while ((cause != null) && (cause.getCause() != null) 
+                                           && (cause.getCause() != cause)) {
+                cause = cause.getCause();
+            }
+            if (cause != null) {
+                builder.append(",\"cause\":");
+                appendValue(cause.toString());
+            }
+        }
+        builder.append("}\n");
+        out.append(builder);
+
+        if ("message".equals(event.type) && (fields != null)) {
+            clearProgress();
+            console.println(fields[1]);
+        } else if ("ERROR".equals(event.level) && progress) {
+            clearProgress();
+            console.println("ERROR " + event.type + ((event.error == null) 
+                                              ? "" : ": " + event.error));
+        }
+    }
+
+    /**
+     * Appends a json value
+     * @param value a number, a boolean, null or other object (as a string)
+     */
+    private void appendValue(final Object value) {
+        if ((value == null) || (value instanceof Number) 
+                                              || (value instanceof Boolean)) {
+            builder.append(value);
+        } else {
+            final String str = value.toString();
+            builder.append('"');
+            for (int idx = 0; idx < str.length(); idx++) {
+                final char ch = str.charAt(idx);
+                switch (ch) {
+                    case '"': builder.append("\\\""); break;
+                    case '\\': builder.append("\\\\"); break;
+                    case '\n': builder.append("\\n"); break;
+                    case '\r': builder.append("\\r"); break;
+                    case '\t': builder.append("\\t"); break;
+                    default:
+                        if (ch < 0x20) {
+                            builder.append(String.format("\\u%04x", (int)ch));
+                        } else {
+                            builder.append(ch);
+                        }
+                }
+            }
+            builder.append('"');
+        }
+    }
+
+    /**
+     * Erases the progress line of the console
+     */
+    private void clearProgress() {
+        if (progressLength > 0) {
+            console.print('\r');
+            for (int idx = 0; idx < progressLength; idx++) {
+                console.print(' ');
+            }
+            console.print('\r');
+            progressLength = 0;
+        }
+    }
+
+    /**
+     * Redraws the progress line of the console
+     */
+    private void showProgress() {
+        final RunMetrics metrics = RunMetrics.get();
+        final long secs = TimeUnit.NANOSECONDS.toSeconds(
+                                                     System.nanoTime() - start);
+        final String line = String.format("[%02d:%02d:%02d] pages %d (%d err)"
+            + " | csv %d (%d skip) | cells %d | files %d (%.1f MB)",
+            secs / 3600, (secs / 60) % 60, secs % 60,
+            metrics.getPagesFetched(), metrics.getFetchErrors(),
+            metrics.getCsvParsed(), metrics.getCsvSkipped(),
+            metrics.getCellsRendered(), metrics.getFilesWritten(),
+            metrics.getBytesWritten() / (1024.0 * 1024.0));
+
+        console.print('\r');
+        console.print(line);
+        for (int idx = line.length(); idx < progressLength; idx++) {
+            console.print(' ');
+        }
+        console.flush();
+        progressLength = line.length();
+    }
+}
@@ -0,0 +1,219 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls the requests sent to each host. For each host there is a limit
+ * of concurrent requests and a minimum interval between two requests. The
+ * concurrency limit is adjusted (AIMD): it grows by one after a window of
+ * fast requests and it is divided by two when the latency (time to the 
+ * response headers) grows too much or a request shows congestion (timeout,
+ * connection failure, 5xx or 429 response).
+ * date: 20261018
+ */
+class FetchScheduler {
+    static final int DEFAULT_INITIAL_LIMIT = 2;
+    static final int DEFAULT_MAX_LIMIT = 8;
+    static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+
+    // smoothed latency above TOLERANCE * baseline is a sign of congestion
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final double BASELINE_WEIGHT = 0.01;
+
+    private final int initialLimit;
+    private final int maxLimit;
+    private final long intervalNanos; // minimum time between two requests
+    private final ConcurrentMap<String,Host> hosts;
+
+    FetchScheduler() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT,
+                                                  DEFAULT_REQUESTS_PER_SECOND);
+    }
+
+    /**
+     * Constructor
+     * @param initialLimit initial number of concurrent requests per host
+     * @param maxLimit maximum number of concurrent requests per host
+     * @param requestsPerSecond maximum number of requests started per second
+     * per host. Zero or negative means no rate limit.
+     */
+    FetchScheduler(final int initialLimit,
+                   final int maxLimit,
+                   final double requestsPerSecond) {
+        if (initialLimit <= 0) {
+            throw new IllegalArgumentException("initialLimit <= 0");
+        }
+        if (maxLimit < initialLimit) {
+            throw new IllegalArgumentException("maxLimit < initialLimit");
+        }
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.intervalNanos = (requestsPerSecond <= 0) ? 0
+                         : (long)(TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.hosts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Waits until a new request to the url host is allowed
+     * @param url url to be requested
+     * @return the request start time (System.nanoTime), used to compute the
+     * latency given to release()
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    long acquire(final URL url) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        return getHost(url).acquire();
+    }
+
+    /**
+     * Informs that a request acquired by acquire() is finished
+     * @param url requested url
+     * @param latency time (nanoseconds) from the start returned by acquire()
+     * to the response headers, or to the request failure if there was no
+     * response
+     * @param congestion true if the request failed because the server or the
+     * network is overloaded (timeout, connection failure, 5xx or 429)
+     */
+    void release(final URL url,
+                 final long latency,
+                 final boolean congestion) {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        getHost(url).release(latency, congestion);
+    }
+
+    /**
+     * @param url url of the host
+     * @return the current number of concurrent requests allowed for the host
+     */
+    int getLimit(final URL url) {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        return getHost(url).getLimit();
+    }
+
+    private Host getHost(final URL url) {
+        assert url != null;
+
+        final String key = url.getAuthority().toLowerCase();
+        Host host = hosts.get(key);
+
+        if (host == null) {
+            final Host nhost = new Host();
+            host = hosts.putIfAbsent(key, nhost);
+            if (host == null) {
+                host = nhost;
+            }
+        }
+        return host;
+    }
+
+    /**
+     * Request state of a host
+     */
+    private class Host {
+        private int limit = initialLimit;
+        private int inFlight = 0;
+        private int successes = 0; // good requests since last limit change
+        private double latency = 0; // smoothed latency (nanoseconds)
+        private double baseline = 0; // lowest smoothed latency (slowly rising)
+        private long nextSlot = 0; // time of next request start
+        private boolean decreased = false; // limit was ever decreased
+        private long lastDecrease; // time of the last decrease
+
+        synchronized long acquire() throws IOException {
+            try {
+                while (inFlight >= limit) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("fetch interrupted");
+            }
+            inFlight++;
+
+            final long now = System.nanoTime();
+            final long slot = Math.max(now, nextSlot);
+            nextSlot = slot + intervalNanos;
+            try {
+                long delay = slot - now;
+                while (delay > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, delay);
+                    delay = slot - System.nanoTime();
+                }
+            } catch (InterruptedException ex) {
+                inFlight--;
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("fetch interrupted");
+            }
+            return System.nanoTime();
+        }
+
+        synchronized void release(final long elapsed,
+                                  final boolean congestion) {
+            final long now = System.nanoTime();
+
+            inFlight--;
+            if (latency == 0) {
+                latency = elapsed;
+                baseline = elapsed;
+            } else {
+                latency += LATENCY_WEIGHT * (elapsed - latency);
+                baseline = Math.min(latency,
+                                  baseline + BASELINE_WEIGHT * (latency - baseline));
+            }
+            if (congestion || (latency > LATENCY_TOLERANCE * baseline)) {
+                successes = 0;
+                // at most one decrease by round trip time
+                if ((!decreased) || (now - lastDecrease > latency)) {
+                    limit = Math.max(1, limit / 2);
+                    decreased = true;
+                    lastDecrease = now;
+                }
+            } else if (++successes >= limit) {
+                successes = 0;
+                if (limit < maxLimit) {
+                    limit++;
+                }
+            }
+            notifyAll();
+        }
+
+        synchronized int getLimit() {
+            return limit;
+        }
+    }
+}
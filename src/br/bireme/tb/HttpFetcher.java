@@ -0,0 +1,214 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Http client shared by all page loads. Connections are kept alive and
+ * reused (the response body is always fully read and closed and the
+ * connection is never disconnected), responses can be gzip/deflate
+ * compressed and redirects are followed up to a maximum number of hops.
+ * The number of idle connections kept alive per host is given by the JVM
+ * properties http.keepAlive and http.maxConnections (see URLS.main).
+ * date: 20261018
+ */
+class HttpFetcher {
+    static final int MAX_REDIRECTS = 10;
+    static final int CONNECT_TIMEOUT = 30000; // miliseconds
+    static final int READ_TIMEOUT = 300000;   // miliseconds
+
+    /**
+     * A http response
+     */
+    static class Response {
+        int status;
+        URL location; // real location of the page (in case of redirect)
+        String etag;
+        String lastModified;
+        InputStream body; // decoded content. Should be read and closed.
+    }
+
+    /**
+     * Loads an url (GET - method) following redirects
+     * @param url url to be loaded
+     * @param headers extra request headers
+     * @return the response
+     * @throws IOException
+     */
+    Response get(final URL url,
+                 final Map<String,String> headers) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (headers == null) {
+            throw new NullPointerException("headers");
+        }
+        URL current = url;
+
+        for (int hop = 0; ; hop++) {
+            final HttpURLConnection connection = open(current, "GET", headers);
+            final int status = connection.getResponseCode();
+
+            if (!isRedirect(status)) {
+                return getResponse(connection, current, status);
+            }
+            final String location = connection.getHeaderField("Location");
+            discard(connection, status);
+            if (location == null) {
+                throw new IOException("redirect without location: [" 
+                                                                + current + "]");
+            }
+            if (hop >= MAX_REDIRECTS) {
+                throw new IOException("too many redirects: [" + url + "]");
+            }
+            current = new URL(current, location);
+        }
+    }
+
+    /**
+     * Loads an url (POST - method). Redirects are not followed.
+     * @param url url to be loaded
+     * @param content request content
+     * @param headers extra request headers
+     * @return the response
+     * @throws IOException
+     */
+    Response post(final URL url,
+                  final byte[] content,
+                  final Map<String,String> headers) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        if (headers == null) {
+            throw new NullPointerException("headers");
+        }
+        final HttpURLConnection connection = open(url, "POST", headers);
+
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(content.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(content);
+        }
+
+        return getResponse(connection, url, connection.getResponseCode());
+    }
+
+    private HttpURLConnection open(final URL url,
+                                   final String method,
+                                   final Map<String,String> headers)
+                                                            throws IOException {
+        assert url != null;
+        assert method != null;
+        assert headers != null;
+
+        final HttpURLConnection connection =
+                                        (HttpURLConnection)url.openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept-Charset", URLS.DEFAULT_ENCODING);
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        connection.setRequestProperty("User-Agent", "curl/7.29.0");
+        connection.setRequestProperty("Accept", "*/*");
+        for (Map.Entry<String,String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        return connection;
+    }
+
+    private Response getResponse(final HttpURLConnection connection,
+                                 final URL location,
+                                 final int status) throws IOException {
+        assert connection != null;
+        assert location != null;
+
+        final Response response = new Response();
+        response.status = status;
+        response.location = location;
+        response.etag = connection.getHeaderField("ETag");
+        response.lastModified = connection.getHeaderField("Last-Modified");
+
+        InputStream in = (status >= 400) ? connection.getErrorStream()
+                                         : connection.getInputStream();
+        if (in == null) {
+            in = new ByteArrayInputStream(new byte[0]);
+        } else if ((status != HttpURLConnection.HTTP_NOT_MODIFIED) &&
+                   (status != HttpURLConnection.HTTP_NO_CONTENT)) {
+            final String encoding = connection.getContentEncoding();
+            if ("gzip".equalsIgnoreCase(encoding) 
+                                     || "x-gzip".equalsIgnoreCase(encoding)) {
+                in = new GZIPInputStream(in);
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                in = new InflaterInputStream(in);
+            }
+        }
+        response.body = in;
+
+        return response;
+    }
+
+    /**
+     * Reads and closes the response body, so the connection can be reused
+     * @param connection the connection
+     * @param status response code
+     */
+    private void discard(final HttpURLConnection connection,
+                         final int status) {
+        assert connection != null;
+
+        try {
+            final InputStream in = (status >= 400) ? connection.getErrorStream()
+                                                   : connection.getInputStream();
+            if (in != null) {
+                try (InputStream input = in) {
+                    final byte[] buffer = new byte[8192];
+                    while (input.read(buffer) != -1) {
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            connection.disconnect();
+        }
+    }
+
+    private static boolean isRedirect(final int status) {
+        return (status == HttpURLConnection.HTTP_MOVED_PERM)
+            || (status == HttpURLConnection.HTTP_MOVED_TEMP)
+            || (status == HttpURLConnection.HTTP_SEE_OTHER)
+            || (status == 307) || (status == 308);
+    }
+}
@@ -0,0 +1,319 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Updates an output directory of a previous run writing only the new or
+ * changed files. A manifest file keeps the content hash (SHA-1) of each
+ * output path and the number of each table, so the cell files of a table
+ * keep their names between runs. When the run is committed, the files not
+ * written again are deleted, the manifest is replaced and a change list
+ * (one "A|M|D path" line per added, modified or deleted file) is written.
+ * date: 20261018
+ */
+class IncrementalSink implements OutputSink {
+    private static final String FILE = "F";
+    private static final String TABLE = "T";
+
+    private final File root;
+    private final File manifest;
+    private final File changes;
+    private final DirectorySink dirSink;
+    private final Map<String,String> oldHashes; // previous run (path, hash)
+    private final Map<String,String> newHashes; // this run (path, hash)
+    private final Map<String,Character> changed; // (path, A|M|D)
+    private final TableNumbers numbers;
+    private final AtomicInteger unchanged;
+    private boolean committed;
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param root output directory. It is created if it does not exist.
+     * @param manifest file with the hashes and table numbers of the
+     * previous run. It is replaced when the sink is closed.
+     * @param changes file where the change list will be written
+     * @throws IOException 
+     */
+    IncrementalSink(final File root,
+                    final File manifest,
+                    final File changes) throws IOException {
+        if (root == null) {
+            throw new NullPointerException("root");
+        }
+        if (manifest == null) {
+            throw new NullPointerException("manifest");
+        }
+        if (changes == null) {
+            throw new NullPointerException("changes");
+        }
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Directory [" + root.getAbsolutePath()
+                                                          + "] creation error.");
+        }
+        this.root = root;
+        this.manifest = manifest;
+        this.changes = changes;
+        this.dirSink = new DirectorySink(root, true);
+        this.oldHashes = new HashMap<>();
+        this.newHashes = new ConcurrentHashMap<>();
+        this.changed = new ConcurrentHashMap<>();
+        this.unchanged = new AtomicInteger();
+
+        final Map<String,Integer> tables = new HashMap<>();
+        if (manifest.isFile()) {
+            readManifest(tables);
+        }
+        this.numbers = new TableNumbers(tables);
+    }
+
+    /**
+     * @return the table numbers of the previous run plus the new ones
+     */
+    TableNumbers getTableNumbers() {
+        return numbers;
+    }
+
+    @Override
+    public void write(final String path,
+                      final ByteBuffer content) throws IOException {
+        if (path == null) {
+            throw new NullPointerException("path");
+        }
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        final String hash = hash(content.duplicate());
+
+        if (newHashes.putIfAbsent(path, hash) != null) {
+            throw new IOException("File[" + path + "] already exists");
+        }
+        final String oldHash = oldHashes.get(path);
+
+        if (hash.equals(oldHash) && new File(root, path).isFile()) {
+            content.position(content.limit());
+            unchanged.incrementAndGet();
+        } else {
+            try {
+                dirSink.write(path, content);
+            } catch (IOException ioe) {
+                // a file of the previous run that could not be rewritten is 
+                // kept with its old hash
+                if (oldHash == null) {
+                    newHashes.remove(path);
+                } else {
+                    newHashes.put(path, oldHash);
+                }
+                throw ioe;
+            }
+            changed.put(path, (oldHash == null) ? 'A' : 'M');
+        }
+    }
+
+    /**
+     * Marks the run as complete and without errors. When the sink is closed,
+     * the files of the previous run that were not written again will be
+     * deleted. If the sink is closed without a commit (a failed run or one
+     * that skipped pages or csv files), no file is deleted.
+     */
+    synchronized void commit() {
+        committed = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        dirSink.close();
+
+        final Map<String,String> hashes = new TreeMap<>(newHashes);
+        for (Map.Entry<String,String> entry : oldHashes.entrySet()) {
+            final String path = entry.getKey();
+
+            if (!hashes.containsKey(path)) {
+                if (committed) {
+                    delete(path);
+                    changed.put(path, 'D');
+                } else {
+                    hashes.put(path, entry.getValue());
+                }
+            }
+        }
+        writeManifest(hashes, numbers.getAll());
+        writeChanges();
+    }
+
+    /**
+     * @return number of added, modified, deleted and unchanged files
+     */
+    @Override
+    public String toString() {
+        int added = 0;
+        int modified = 0;
+        int deleted = 0;
+
+        for (char type : changed.values()) {
+            switch (type) {
+                case 'A': added++; break;
+                case 'M': modified++; break;
+                default: deleted++;
+            }
+        }
+        return "added: " + added + " modified: " + modified + " deleted: " 
+                                  + deleted + " unchanged: " + unchanged.get();
+    }
+
+    /**
+     * Reads the manifest of the previous run
+     * @param tables where the table numbers will be put (key, table number)
+     * @throws IOException 
+     */
+    private void readManifest(final Map<String,Integer> tables) 
+                                                            throws IOException {
+        assert tables != null;
+
+        try (BufferedReader reader = Files.newBufferedReader(
+                                  manifest.toPath(), StandardCharsets.UTF_8)) {
+            while (true) {
+                final String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                final String[] split = line.split("\t", 3);
+                if (split.length != 3) {
+                    continue;
+                }
+                if (split[0].equals(FILE)) {
+                    oldHashes.put(split[2], split[1]);
+                } else if (split[0].equals(TABLE)) {
+                    tables.put(split[2], Integer.valueOf(split[1]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the manifest file
+     * @param hashes (path, content hash)
+     * @param tables (key, table number)
+     * @throws IOException 
+     */
+    private void writeManifest(final Map<String,String> hashes,
+                               final Map<String,Integer> tables) 
+                                                            throws IOException {
+        assert hashes != null;
+        assert tables != null;
+
+        final File tmp = new File(manifest.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(),
+                                                     StandardCharsets.UTF_8)) {
+            for (Map.Entry<String,Integer> entry : tables.entrySet()) {
+                writer.write(TABLE + "\t" + entry.getValue() + "\t" 
+                                                      + entry.getKey() + "\n");
+            }
+            for (Map.Entry<String,String> entry : hashes.entrySet()) {
+                writer.write(FILE + "\t" + entry.getValue() + "\t" 
+                                                      + entry.getKey() + "\n");
+            }
+        }
+        Files.move(tmp.toPath(), manifest.toPath(),
+                                         StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the change list sorted by path
+     * @throws IOException 
+     */
+    private void writeChanges() throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(changes.toPath(),
+                                                     StandardCharsets.UTF_8)) {
+            for (Map.Entry<String,Character> entry : 
+                                         new TreeMap<>(changed).entrySet()) {
+                writer.write(entry.getValue() + " " + entry.getKey() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Deletes an obsolete file and its parent directories if they get empty
+     * @param path file path relative to the root directory
+     * @throws IOException 
+     */
+    private void delete(final String path) throws IOException {
+        assert path != null;
+
+        File file = new File(root, path);
+        Files.deleteIfExists(file.toPath());
+
+        file = file.getParentFile();
+        while ((file != null) && !file.equals(root)) {
+            final String[] children = file.list();
+            if ((children == null) || (children.length > 0) 
+                                                         || !file.delete()) {
+                break;
+            }
+            file = file.getParentFile();
+        }
+    }
+
+    /**
+     * @param content file content
+     * @return the SHA-1 hash of the content (hexadecimal)
+     */
+    private static String hash(final ByteBuffer content) {
+        assert content != null;
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(content);
+
+        final StringBuilder builder = new StringBuilder();
+        for (byte bt : digest.digest()) {
+            builder.append(Character.forDigit((bt >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(bt & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,187 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event classes. Only used through StageEvents, after checking that the
+ * jdk.jfr api is available.
+ * date: 20261018
+ */
+final class JfrEvents {
+    private JfrEvents() {
+    }
+
+    @Name("br.bireme.tb.Fetch")
+    @Label("Page Fetch")
+    @Category("TabNetCells")
+    static class FetchEvent extends Event {
+        @Label("Url")
+        String url;
+
+        @Label("Method")
+        String method;
+
+        @Label("Status")
+        int status;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("br.bireme.tb.CsvParse")
+    @Label("Csv Parse")
+    @Category("TabNetCells")
+    static class ParseEvent extends Event {
+        @Label("Table")
+        String title;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Columns")
+        int columns;
+    }
+
+    @Name("br.bireme.tb.CellRender")
+    @Label("Cell Render (sampled)")
+    @Category("TabNetCells")
+    static class RenderEvent extends Event {
+        @Label("Table")
+        String table;
+
+        @Label("Cell")
+        int cell;
+
+        @Label("Html Length")
+        int length;
+    }
+
+    @Name("br.bireme.tb.FileWrite")
+    @Label("File Write")
+    @Category("TabNetCells")
+    static class WriteEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * Starts an event if it is enabled
+     * @param event the event
+     * @return the started event or null if it is not enabled
+     */
+    private static Event begin(final Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static Object beginFetch() {
+        return begin(new FetchEvent());
+    }
+
+    static void endFetch(final Object token,
+                         final String url,
+                         final String method,
+                         final int status,
+                         final long bytes) {
+        final FetchEvent event = (FetchEvent)token;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.url = url;
+            event.method = method;
+            event.status = status;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    static Object beginParse() {
+        return begin(new ParseEvent());
+    }
+
+    static void endParse(final Object token,
+                         final String title,
+                         final int rows,
+                         final int columns) {
+        final ParseEvent event = (ParseEvent)token;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.title = title;
+            event.rows = rows;
+            event.columns = columns;
+            event.commit();
+        }
+    }
+
+    static Object beginRender() {
+        return begin(new RenderEvent());
+    }
+
+    static void endRender(final Object token,
+                          final Cell cell,
+                          final int length) {
+        final RenderEvent event = (RenderEvent)token;
+
+        event.end();
+        if (event.shouldCommit()) {
+            final UrlElem elem = cell.getElem();
+            event.table = ((elem == null) || (elem.csv == null)) ? null
+                                                        : elem.csv.toString();
+            event.cell = cell.getIdx();
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    static Object beginWrite() {
+        return begin(new WriteEvent());
+    }
+
+    static void endWrite(final Object token,
+                         final String path,
+                         final long bytes) {
+        final WriteEvent event = (WriteEvent)token;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination of the output files (cell pages, sitemaps, index, css ...).
+ * Implementations must be thread safe.
+ * date: 20261018
+ */
+interface OutputSink extends Closeable {
+    /**
+     * Writes a file
+     * @param path file path relative to the output root ('/' separated)
+     * @param content file content (from its position to its limit). The 
+     * buffer position is moved to its limit.
+     * @throws IOException if the file already exists or can not be written
+     */
+    void write(String path,
+               ByteBuffer content) throws IOException;
+}
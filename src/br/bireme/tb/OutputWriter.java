@@ -0,0 +1,307 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the output files in background (write-behind). Files are queued by
+ * the producer threads, encoded in UTF-8 into direct byte buffers by the
+ * writer threads and written into an OutputSink. When the queue is full, the
+ * producers wait.
+ * date: 20261018
+ */
+class OutputWriter {
+    static final int DEFAULT_WRITERS = 2;
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A file to be written
+     */
+    private static class Job {
+        final String path;          // path relative to the root directory
+        final CharSequence content; // null means 'stop the writer thread'
+
+        Job(final String path,
+            final CharSequence content) {
+            this.path = path;
+            this.content = content;
+        }
+    }
+
+    private final OutputSink sink;
+    private final BlockingQueue<Job> queue;
+    private final Thread[] writers;
+    private final Set<String> failed; // paths that could not be written
+    private final AtomicLong files;
+    private final AtomicLong bytes;
+    private final AtomicInteger maxDepth;
+    private final long start;
+    private long elapsed;   // milliseconds from start to close
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param sink where the files will be written
+     * @param writers number of writer threads
+     * @param capacity maximum number of files waiting to be written
+     */
+    OutputWriter(final OutputSink sink,
+                 final int writers,
+                 final int capacity) {
+        if (sink == null) {
+            throw new NullPointerException("sink");
+        }
+        if (writers <= 0) {
+            throw new IllegalArgumentException("writers <= 0");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writers = new Thread[writers];
+        this.failed = Collections.synchronizedSet(new TreeSet<String>());
+        this.files = new AtomicLong();
+        this.bytes = new AtomicLong();
+        this.maxDepth = new AtomicInteger();
+        this.start = System.currentTimeMillis();
+
+        for (int idx = 0; idx < writers; idx++) {
+            this.writers[idx] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "writer-" + (idx + 1));
+            this.writers[idx].setDaemon(true);
+            this.writers[idx].start();
+        }
+    }
+
+    /**
+     * Queues a file to be written. Waits if the queue is full.
+     * @param path file path relative to the root directory ('/' separated).
+     * The file can not exist.
+     * @param content file content
+     * @throws IOException if the writer is closed or the thread is interrupted
+     */
+    void write(final String path,
+               final CharSequence content) throws IOException {
+        if (path == null) {
+            throw new NullPointerException("path");
+        }
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("writer is closed");
+            }
+        }
+        try {
+            queue.put(new Job(path, content));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("output writer interrupted", ex);
+        }
+        final int depth = queue.size();
+        int max = maxDepth.get();
+        while ((depth > max) && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+    }
+
+    /**
+     * Waits until all queued files are written and stops the writer threads.
+     * The sink is not closed.
+     * @throws IOException if the thread is interrupted
+     */
+    void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            for (int idx = 0; idx < writers.length; idx++) {
+                queue.put(new Job(null, null));
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("output writer interrupted", ex);
+        }
+        synchronized (this) {
+            elapsed = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * @return paths of the files that could not be written
+     */
+    Set<String> getFailed() {
+        synchronized (failed) {
+            return new TreeSet<>(failed);
+        }
+    }
+
+    long getFiles() {
+        return files.get();
+    }
+
+    long getBytes() {
+        return bytes.get();
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    int getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return write throughput (bytes per second) since the writer creation
+     */
+    double getBytesPerSecond() {
+        final long time;
+        synchronized (this) {
+            time = closed ? elapsed : System.currentTimeMillis() - start;
+        }
+        return (time <= 0) ? 0 : (bytes.get() * 1000.0) / time;
+    }
+
+    @Override
+    public String toString() {
+        return "files written: " + files.get() + " bytes: " + bytes.get()
+            + " (" + String.format("%.1f", getBytesPerSecond() / 1024) 
+            + " KB/s) queue depth: " + queue.size() + " (max " 
+            + maxDepth.get() + ")";
+    }
+
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        while (true) {
+            final Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (job.path == null) {
+                return;
+            }
+            try {
+                buffer = encode(job.content, buffer, encoder);
+                final int len = buffer.remaining();
+                final long begin = System.nanoTime();
+                final Object event = StageEvents.beginWrite();
+                sink.write(job.path, buffer);
+                RunMetrics.get().fileWritten(len, System.nanoTime() - begin);
+                StageEvents.endWrite(event, job.path, len);
+                bytes.addAndGet(len);
+                files.incrementAndGet();
+            } catch (IOException | RuntimeException ex) {
+                // the thread must survive, otherwise the producers and close()
+                // would wait forever for a free queue slot
+                failed.add(job.path);
+                Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.SEVERE,
+                                       "Can not save file: " + job.path, ex);
+            }
+        }
+    }
+
+    /**
+     * Encodes a file content in UTF-8
+     * @param content the content to be encoded
+     * @param buffer the buffer used to store the encoded content
+     * @param encoder UTF-8 encoder
+     * @return the buffer with the encoded content ready to be read. If the
+     * given buffer is too small, a bigger one is returned.
+     * @throws IOException 
+     */
+    private ByteBuffer encode(final CharSequence content,
+                              final ByteBuffer buffer,
+                              final CharsetEncoder encoder) throws IOException {
+        assert content != null;
+        assert buffer != null;
+        assert encoder != null;
+
+        final CharBuffer chars = CharBuffer.wrap(content);
+        ByteBuffer buf = buffer;
+
+        encoder.reset();
+        buf.clear();
+        while (true) {
+            final CoderResult result = encoder.encode(chars, buf, true);
+            if (result.isUnderflow()) {
+                break;
+            }
+            if (result.isOverflow()) {
+                buf = grow(buf);
+            } else {
+                result.throwException();
+            }
+        }
+        while (!encoder.flush(buf).isUnderflow()) {
+            buf = grow(buf);
+        }
+        buf.flip();
+
+        return buf;
+    }
+
+    private static ByteBuffer grow(final ByteBuffer buffer) {
+        final ByteBuffer nbuffer = ByteBuffer.allocateDirect(
+                                                        buffer.capacity() * 2);
+        buffer.flip();
+        nbuffer.put(buffer);
+
+        return nbuffer;
+    }
+}
@@ -0,0 +1,338 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Registry of the created file paths that keeps them on disk instead of in
+ * the heap. The paths are appended to a log file and, when they are read, 
+ * the log is sorted externally (sorted runs of at most runSize paths merged
+ * into a single file), so the memory used does not depend on the number of
+ * registered paths. Instances are thread safe.
+ * date: 20261018
+ */
+class PathRegistry implements Closeable, Iterable<String> {
+    static final int DEFAULT_RUN_SIZE = 100000;
+
+    private final File dir;           // temporary files directory
+    private final File log;           // paths in insertion order
+    private final File sorted;        // sorted paths without duplicates
+    private final int runSize;        // maximum paths sorted in memory
+    private final Set<String> removed; // paths to be ignored (few)
+    private BufferedWriter out;       // log writer
+    private boolean dirty;            // sorted file is outdated
+    private long size;                // paths of the sorted file
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @throws IOException 
+     */
+    PathRegistry() throws IOException {
+        this(DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param runSize maximum number of paths sorted in memory
+     * @throws IOException 
+     */
+    PathRegistry(final int runSize) throws IOException {
+        if (runSize <= 0) {
+            throw new IllegalArgumentException("runSize <= 0");
+        }
+        this.dir = Files.createTempDirectory("paths").toFile();
+        this.log = new File(dir, "paths.log");
+        this.sorted = new File(dir, "paths.sorted");
+        this.runSize = runSize;
+        this.removed = new HashSet<>();
+        this.out = Files.newBufferedWriter(log.toPath(), 
+                                                       StandardCharsets.UTF_8);
+        this.dirty = true;
+    }
+
+    /**
+     * Registers a path
+     * @param path file path. It can not have line breaks.
+     * @throws IOException 
+     */
+    synchronized void add(final String path) throws IOException {
+        if (path == null) {
+            throw new NullPointerException("path");
+        }
+        if ((path.indexOf('\n') != -1) || (path.indexOf('\r') != -1)) {
+            throw new IllegalArgumentException("path with line break: " + path);
+        }
+        checkOpen();
+        out.write(path);
+        out.write('\n');
+        dirty = true;
+    }
+
+    /**
+     * Unregisters some paths (for ex, files that could not be written)
+     * @param paths paths to be removed
+     */
+    synchronized void removeAll(final Collection<String> paths) {
+        if (paths == null) {
+            throw new NullPointerException("paths");
+        }
+        removed.addAll(paths);
+        dirty = true;
+    }
+
+    /**
+     * @return number of registered paths (without duplicates)
+     * @throws IOException 
+     */
+    synchronized long size() throws IOException {
+        sort();
+        return size;
+    }
+
+    /**
+     * @return the registered paths in ascending order, without duplicates.
+     * Paths registered after the call are not returned. Read errors are 
+     * thrown as IllegalStateException.
+     */
+    @Override
+    public synchronized Iterator<String> iterator() {
+        final BufferedReader reader;
+
+        try {
+            sort();
+            reader = Files.newBufferedReader(sorted.toPath(), 
+                                                       StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+        return new Iterator<String>() {
+            private String next = readLine(reader);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final String ret = next;
+                next = readLine(reader);
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Deletes the temporary files
+     * @throws IOException 
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+        Utils.deleteFile(dir);
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("path registry is closed");
+        }
+    }
+
+    /**
+     * Reads the next line of a reader, closing it at the end
+     * @param reader reader of a sorted file
+     * @return the line or null if there are no more lines
+     */
+    private static String readLine(final BufferedReader reader) {
+        assert reader != null;
+
+        try {
+            final String line = reader.readLine();
+            if (line == null) {
+                reader.close();
+            }
+            return line;
+        } catch (IOException ioe) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                ioe.addSuppressed(ex);
+            }
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Creates the sorted file from the log if it is outdated
+     * @throws IOException 
+     */
+    private void sort() throws IOException {
+        checkOpen();
+        if (!dirty) {
+            return;
+        }
+        out.flush();
+
+        final List<File> runs = new ArrayList<>();
+        final List<String> buffer = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(log.toPath(),
+                                                     StandardCharsets.UTF_8)) {
+            while (true) {
+                final String line = reader.readLine();
+                if (line != null) {
+                    buffer.add(line);
+                }
+                if ((buffer.size() >= runSize) || 
+                                   ((line == null) && (!buffer.isEmpty()))) {
+                    Collections.sort(buffer);
+                    final File run = new File(dir, "run" + runs.size());
+                    writeLines(buffer.iterator(), run);
+                    runs.add(run);
+                    buffer.clear();
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+        }
+        merge(runs);
+        for (File run : runs) {
+            Files.delete(run.toPath());
+        }
+        dirty = false;
+    }
+
+    /**
+     * Merges sorted runs into the sorted file, skipping duplicated and
+     * removed paths
+     * @param runs sorted files
+     * @throws IOException 
+     */
+    private void merge(final List<File> runs) throws IOException {
+        assert runs != null;
+
+        final PriorityQueue<Head> heads = new PriorityQueue<>();
+        final List<BufferedReader> readers = new ArrayList<>();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(sorted.toPath(),
+                                                     StandardCharsets.UTF_8)) {
+            for (File run : runs) {
+                final BufferedReader reader = Files.newBufferedReader(
+                                          run.toPath(), StandardCharsets.UTF_8);
+                readers.add(reader);
+                final String line = reader.readLine();
+                if (line != null) {
+                    heads.add(new Head(line, reader));
+                }
+            }
+            String last = null;
+            size = 0;
+            while (!heads.isEmpty()) {
+                final Head head = heads.poll();
+                if (!head.line.equals(last) && !removed.contains(head.line)) {
+                    writer.write(head.line);
+                    writer.write('\n');
+                    size++;
+                }
+                last = head.line;
+                final String line = head.reader.readLine();
+                if (line != null) {
+                    heads.add(new Head(line, head.reader));
+                }
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Writes lines into a file
+     * @param lines lines to be written
+     * @param file destination file
+     * @throws IOException 
+     */
+    private static void writeLines(final Iterator<String> lines,
+                                   final File file) throws IOException {
+        assert lines != null;
+        assert file != null;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(),
+                                                     StandardCharsets.UTF_8)) {
+            while (lines.hasNext()) {
+                writer.write(lines.next());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Current line of a sorted run
+     */
+    private static class Head implements Comparable<Head> {
+        final String line;
+        final BufferedReader reader;
+
+        Head(final String line,
+             final BufferedReader reader) {
+            this.line = line;
+            this.reader = reader;
+        }
+
+        @Override
+        public int compareTo(final Head other) {
+            return line.compareTo(other.line);
+        }
+    }
+}
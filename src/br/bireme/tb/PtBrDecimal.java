@@ -0,0 +1,318 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+/**
+ * Parses and formats TabNet numbers (pt-BR style: 1.234,56). Works directly
+ * over the characters of the value with exact decimal arithmetic, rounding
+ * to 3 fraction digits (half even), as NumberFormat.getInstance(pt_BR) does.
+ * It is thread safe and does not create objects once the per-thread digit
+ * buffer is big enough.
+ * date: 20261018
+ */
+final class PtBrDecimal {
+    /**
+     * Scale of the numbers returned by parse (10^MAX_FRACTION_DIGITS)
+     */
+    static final long SCALE = 1000;
+
+    /**
+     * Value returned by parse when the text is not a number or it does not
+     * fit into a long
+     */
+    static final long NAN = Long.MIN_VALUE;
+
+    private static final int MAX_FRACTION_DIGITS = 3;
+    private static final char GROUPING = '.';
+    private static final char DECIMAL = ',';
+
+    // Digit buffer of each thread
+    private static final ThreadLocal<char[]> DIGITS = 
+                                                  new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[32];
+        }
+    };
+
+    // Formatted number buffer of each thread (used by parse)
+    private static final ThreadLocal<StringBuilder> FORMATTED = 
+                                           new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder();
+        }
+    };
+
+    private PtBrDecimal() {
+    }
+
+    /**
+     * Parses the number at the beginning of a value and appends it formatted.
+     * As NumberFormat.parse, characters after the number are ignored.
+     * @param value the value to be formatted
+     * @param out where the formatted number will be appended
+     * @return false if the value does not start with a number. Nothing is
+     * appended in this case.
+     */
+    static boolean format(final CharSequence value,
+                          final StringBuilder out) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        final int len = value.length();
+        char[] digits = DIGITS.get();
+        int pos = 0;
+        int num = 0;         // number of digits in the buffer
+        boolean sawDigit = false;
+        final boolean negative = (len > 0) && (value.charAt(0) == '-');
+
+        if (negative) {
+            pos++;
+        }
+
+        // Integer part. Leading zeros and grouping chars are skipped.
+        while (pos < len) {
+            final char ch = value.charAt(pos);
+            if (isDigit(ch)) {
+                sawDigit = true;
+                if ((num > 0) || (ch != '0')) {
+                    if (num == digits.length) {
+                        digits = grow(digits);
+                    }
+                    digits[num++] = ch;
+                }
+            } else if (ch != GROUPING) {
+                break;
+            }
+            pos++;
+        }
+        final int intLen = num;
+
+        // Fraction part. Only the kept digits are stored, the other ones are
+        // used to round.
+        char roundDigit = '0';  // first not kept fraction digit
+        boolean nonZeroAfter = false;  // a non zero digit after roundDigit
+        if ((pos < len) && (value.charAt(pos) == DECIMAL)) {
+            pos++;
+            int fracLen = 0;
+            while (pos < len) {
+                final char ch = value.charAt(pos);
+                if (!isDigit(ch)) {
+                    break;
+                }
+                sawDigit = true;
+                if (fracLen < MAX_FRACTION_DIGITS) {
+                    if (num == digits.length) {
+                        digits = grow(digits);
+                    }
+                    digits[num++] = ch;
+                } else if (fracLen == MAX_FRACTION_DIGITS) {
+                    roundDigit = ch;
+                } else if (ch != '0') {
+                    nonZeroAfter = true;
+                }
+                fracLen++;
+                pos++;
+            }
+        }
+        if (!sawDigit) {
+            return false;
+        }
+
+        // Half even rounding
+        final boolean roundUp;
+        if (roundDigit > '5') {
+            roundUp = true;
+        } else if (roundDigit == '5') {
+            roundUp = nonZeroAfter 
+                          || ((num > 0) && (((digits[num - 1] - '0') & 1) == 1));
+        } else {
+            roundUp = false;
+        }
+        int ilen = intLen;
+        if (roundUp) {
+            int idx = num - 1;
+            while ((idx >= 0) && (digits[idx] == '9')) {
+                digits[idx--] = '0';
+            }
+            if (idx >= 0) {
+                digits[idx]++;
+            } else {
+                if (num == digits.length) {
+                    digits = grow(digits);
+                }
+                System.arraycopy(digits, 0, digits, 1, num);
+                digits[0] = '1';
+                num++;
+                ilen++;
+            }
+        }
+        while ((num > ilen) && (digits[num - 1] == '0')) {
+            num--;
+        }
+
+        if (negative) {
+            out.append('-');
+        }
+        if (ilen == 0) {
+            out.append('0');
+        } else {
+            for (int idx = 0; idx < ilen; idx++) {
+                if ((idx > 0) && ((ilen - idx) % 3 == 0)) {
+                    out.append(GROUPING);
+                }
+                out.append(digits[idx]);
+            }
+        }
+        if (num > ilen) {
+            out.append(DECIMAL);
+            out.append(digits, ilen, num - ilen);
+        }
+        return true;
+    }
+
+    /**
+     * Parses the number at the beginning of a value. The number is rounded
+     * as in format and multiplied by SCALE.
+     * @param value the value to be parsed
+     * @return the scaled number or NAN if the value does not start with a
+     * number or if it is too big. The sign of a number rounded to zero is
+     * lost (see format(long, boolean, StringBuilder)).
+     */
+    static long parse(final CharSequence value) {
+        final StringBuilder formatted = FORMATTED.get();
+
+        formatted.setLength(0);
+        if (!format(value, formatted)) {
+            return NAN;
+        }
+        final int len = formatted.length();
+        long num = 0;
+        int fracLen = -1;  // -1 before the decimal separator
+
+        for (int idx = 0; idx < len; idx++) {
+            final char ch = formatted.charAt(idx);
+            if (ch == DECIMAL) {
+                fracLen = 0;
+            } else if (isDigit(ch)) {
+                final int digit = ch - '0';
+                if (num > (Long.MAX_VALUE - digit) / 10) {
+                    return NAN;
+                }
+                num = num * 10 + digit;
+                if (fracLen >= 0) {
+                    fracLen++;
+                }
+            }
+        }
+        for (int idx = Math.max(fracLen, 0); idx < MAX_FRACTION_DIGITS; idx++) {
+            if (num > Long.MAX_VALUE / 10) {
+                return NAN;
+            }
+            num *= 10;
+        }
+        return (formatted.charAt(0) == '-') ? -num : num;
+    }
+
+    /**
+     * Appends a scaled number formatted as format(CharSequence, StringBuilder)
+     * does.
+     * @param scaled number multiplied by SCALE (see parse). Can not be NAN.
+     * @param negative if true, the '-' sign is appended even if the number
+     * is zero (the original value was negative)
+     * @param out where the formatted number will be appended
+     */
+    static void format(final long scaled,
+                       final boolean negative,
+                       final StringBuilder out) {
+        if (scaled == NAN) {
+            throw new IllegalArgumentException("NAN");
+        }
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        final long abs = Math.abs(scaled);
+        final long integer = abs / SCALE;
+        long fraction = abs % SCALE;
+
+        if (negative || (scaled < 0)) {
+            out.append('-');
+        }
+        appendGrouped(integer, out);
+        if (fraction > 0) {
+            int fracLen = MAX_FRACTION_DIGITS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                fracLen--;
+            }
+            out.append(DECIMAL);
+            for (long pow = pow10(fracLen - 1); pow > 0; pow /= 10) {
+                out.append((char)('0' + (fraction / pow) % 10));
+            }
+        }
+    }
+
+    private static void appendGrouped(final long num,
+                                      final StringBuilder out) {
+        long pow = 1;
+        int digits = 1;
+
+        while (num / pow >= 10) {
+            pow *= 10;
+            digits++;
+        }
+        for (; pow > 0; pow /= 10) {
+            out.append((char)('0' + (num / pow) % 10));
+            digits--;
+            if ((digits > 0) && (digits % 3 == 0)) {
+                out.append(GROUPING);
+            }
+        }
+    }
+
+    private static long pow10(final int exp) {
+        long pow = 1;
+
+        for (int idx = 0; idx < exp; idx++) {
+            pow *= 10;
+        }
+        return pow;
+    }
+
+    private static boolean isDigit(final char ch) {
+        return (ch >= '0') && (ch <= '9');
+    }
+
+    private static char[] grow(final char[] digits) {
+        final char[] ndigits = new char[digits.length * 2];
+
+        System.arraycopy(digits, 0, ndigits, 0, digits.length);
+        DIGITS.set(ndigits);
+
+        return ndigits;
+    }
+}
@@ -21,14 +21,12 @@
 =========================================================================*/
 package br.bireme.tb;
 
-import static br.bireme.tb.Cell.NFMT;
 import static br.bireme.tb.URLS.EDITION_PAT;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -44,9 +42,50 @@ import org.apache.commons.lang3.StringEscapeUtils;
  */
 class RIPSA {
     private static final String TEMPLATE_FILE = "template/template.html";
-    private static String TEMPLATE = null;
+    private static final Pattern YEAR_PAT = Pattern.compile("idb(\\d{4})");
+
+    // Template holes
+    private static final int TITLE = 0;
+    private static final int SUBTITLE = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int KEYWORDS = 3;
+    private static final int SCOPE = 4;
+    private static final int CELHEADER = 5;
+    private static final int CELROW = 6;
+    private static final int CELVAL = 7;
+    private static final int SOURCES = 8;
+    private static final int LABELS = 9;
+    private static final int NOTES = 10;
+    private static final int FATHER = 11;
+    private static final int QUALIFREC = 12;
+    private static final int TABLEHEADER = 13;
+    private static final int TABLEOPTIONS = 14;
+    private static final String[] HOLES = { "title", "subtitle", "description",
+        "keywords", "scope", "celheader", "celrow", "celval", "sources",
+        "labels", "notes", "father", "qualifRec", "tableHeader", 
+        "tableOptions" };
+
+    private static Template TEMPLATE = null;
+
+    // Buffer reused by the cell2html calls of a thread
+    private static final ThreadLocal<StringBuilder> BUFFER = 
+                                             new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(16 * 1024);
+        }
+    };
+
+    // Buffer reused by the cell value formatting of a thread
+    private static final ThreadLocal<StringBuilder> VALUE_BUFFER = 
+                                             new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder();
+        }
+    };
     
-    // Reads the template file only once
+    // Reads and parses the template file only once
     static {
         final StringBuilder builder = new StringBuilder();
         final Path path = FileSystems.getDefault().getPath("", TEMPLATE_FILE);
@@ -57,7 +96,7 @@ class RIPSA {
                 builder.append(line);
                 builder.append("\n");
             }
-            TEMPLATE = builder.toString();
+            TEMPLATE = new Template(builder.toString(), HOLES);
         } catch (IOException ex) {
             Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
                                                    .log(Level.SEVERE, null, ex);
@@ -65,12 +104,26 @@ class RIPSA {
     }
     
     /**
-     * Given a cell, uses its info tho fill the holes of the template String.
-     * @param cell a cell having the data to fill the holes
-     * @return a String with holes replaced
+     * Html fragments shared by all cells of a table. They are created only
+     * once and bound into the template, so only the cell specific holes
+     * (header, row, value and labels) are filled for each cell.
+     */
+    static class Context {
+        private final Template template;
+
+        private Context(final Template template) {
+            this.template = template;
+        }
+    }
+
+    /**
+     * Creates the render context of a table
+     * @param cell any cell of the table. Only the data shared by all table
+     * cells (title, subtitle, scope, sources, notes and urls) are used.
+     * @return the render context
      * @throws IOException 
      */
-    static String cell2html(final Cell cell) throws IOException {
+    static Context newContext(final Cell cell) throws IOException {
         assert cell != null;
         
         if (TEMPLATE == null) {
@@ -83,29 +136,29 @@ class RIPSA {
         }
         final String edition = mat.group(2);
         final String father = cell.getElem().father.toString();
-        final Matcher matf = Pattern.compile("idb(\\d{4})").matcher(father);
+        final Matcher matf = YEAR_PAT.matcher(father);
         if (!matf.find()) {
             throw new IOException("out of pattern url [" + father + "]");
         }
         final String year = matf.group(1);
         
-        String str = TEMPLATE;
+        final String[] holes = new String[HOLES.length];
         final StringBuilder builder = new StringBuilder();
         boolean first;
         
         final String title = cell.getTitle();
         final String title2 = (title == null) ? "" : title;
-        str = str.replace("$$title$$", title2);
+        holes[TITLE] = title2;
         
         final String subtitle = cell.getSubtitle();
         if ((subtitle != null) && (!subtitle.isEmpty())) {
-            str = str.replace("$$subtitle$$", "<h2>" + subtitle + "</h2>");
+            holes[SUBTITLE] = "<h2>" + subtitle + "</h2>";
         } else {
-            str = str.replace("$$subtitle$$", "");
+            holes[SUBTITLE] = "";
         }
         
-        str = str.replace("$$description$$", "Células IDB - " + edition + " - " 
-                                   + year + " - " + title2 + " - " + subtitle);
+        holes[DESCRIPTION] = "Células IDB - " + edition + " - " 
+                                   + year + " - " + title2 + " - " + subtitle;
         
         final StringBuilder aux = new StringBuilder(title);
         final Map<String, String> tableOptions = cell.getElem().tableOptions;
@@ -119,7 +172,7 @@ class RIPSA {
                 }
             }
         }
-        str = str.replace("$$keywords$$", aux.toString());
+        holes[KEYWORDS] = aux.toString();
         
         final List<String> scope = cell.getScope();
         builder.setLength(0);
@@ -135,11 +188,70 @@ class RIPSA {
                 builder.append(scp);
             }
             builder.append("</h3>");
-            str = str.replace("$$scope$$", builder.toString());
+            holes[SCOPE] = builder.toString();
         } else {
-            str = str.replace("$$scope$$", "");
+            holes[SCOPE] = "";
         }
         
+        holes[SOURCES] = notes("Fonte(s)", cell.getSources(), builder);
+        holes[NOTES] = notes("Nota(s)", cell.getNotes(), builder);
+        holes[FATHER] = father;
+        holes[QUALIFREC] = qualifRec;
+        
+        builder.setLength(0);
+        if ((tableOptions != null) && (!tableOptions.isEmpty())) {
+            holes[TABLEHEADER] = "<strong>Filtros usados para a"
+            + " geração da tabela de dados do TabNet</strong>\n<ul>\n";
+            /*holes[TABLEHEADER] = "<strong>Tabela de dados do "
+                      + "TabNet gerada com os seguintes filtros:</strong><br/><br/>";*/
+            for (Map.Entry<String,String> option : tableOptions.entrySet()) {
+                builder.append("\t\t\t\t\t\t<li><label>");
+                builder.append(option.getKey());
+                builder.append(":</label> ");
+                builder.append(option.getValue());
+                builder.append("</li>\n");
+            }        
+            builder.append("\n</ul>");
+            holes[TABLEOPTIONS] = builder.toString();
+        } else {
+            holes[TABLEHEADER] = "";
+            holes[TABLEOPTIONS] = "";
+        }                
+        
+        return new Context(TEMPLATE.bind(holes));
+    }
+
+    /**
+     * Given a cell, uses its info tho fill the holes of the template String.
+     * @param cell a cell having the data to fill the holes
+     * @return a String with holes replaced
+     * @throws IOException 
+     */
+    static String cell2html(final Cell cell) throws IOException {
+        assert cell != null;
+
+        return cell2html(cell, newContext(cell));
+    }
+
+    /**
+     * Given a cell, uses its info tho fill the cell specific holes of the
+     * table render context.
+     * @param cell a cell having the data to fill the holes
+     * @param context render context of the cell table
+     * @return a String with holes replaced
+     * @throws IOException 
+     */
+    static String cell2html(final Cell cell,
+                            final Context context) throws IOException {
+        assert cell != null;
+        assert context != null;
+        
+        final long begin = System.nanoTime();
+        final Object event = StageEvents.beginRender(cell.getIdx());
+        final CharSequence[] holes = new CharSequence[HOLES.length];
+        final StringBuilder builder = BUFFER.get();
+        boolean first;
+        
         final List<String> header = cell.getHeader();
         builder.setLength(0);
         first = true;
@@ -152,101 +264,59 @@ class RIPSA {
                 }
                 builder.append(hdr);
             }
-            str = str.replace("$$celheader$$", builder.toString());
-        } else {
-            str = str.replace("$$celheader$$", "");
+            holes[CELHEADER] = builder.toString();
         }
         
         final String row = cell.getRow();
         if ((row != null) && (!row.isEmpty())) {
-            str = str.replace("$$celrow$$", row);
-        } else {
-            str = str.replace("$$celrow$$", "");
+            holes[CELROW] = row;
         }
         
-        final String value = cell.getValue();
-        if ((value != null) && (!value.isEmpty())) {
-            String celVal;
-            try {
-                celVal = NFMT.format(NFMT.parse(value).floatValue());
-            } catch (ParseException ex) {
-                celVal = value;
-            }
-            str = str.replace("$$celval$$", celVal);
-        } else {
-            str = str.replace("$$celval$$", "");
+        final StringBuilder celVal = VALUE_BUFFER.get();
+        celVal.setLength(0);
+        if (cell.formatValue(celVal)) {
+            holes[CELVAL] = celVal;
         }
         
-        final List<String> sources = cell.getSources();
-        builder.setLength(0);
-        if ((sources != null) && (!sources.isEmpty())) {
-            builder.append("<div class=\"note\">\n");
-            builder.append("\t\t\t\t\t\t\t<label>Fonte(s):</label>\n");
-            for (String source : sources) {
-                builder.append("\t\t\t\t\t\t\t<p>");
-                builder.append(source);
-                builder.append("</p>\n");
-            }
-            builder.append("\t\t\t\t\t\t</div>\n");
-            str = str.replace("$$sources$$", builder.toString());
-        } else {
-            str = str.replace("$$sources$$", "");
-        }            
+        holes[LABELS] = notes("Legenda(s)", cell.getLabels(), builder);
         
-        final List<String> labels = cell.getLabels();
         builder.setLength(0);
-        if ((labels != null) && (!labels.isEmpty())) {
-            builder.append("<div class=\"note\">\n");
-            builder.append("\t\t\t\t\t\t\t<label>Legenda(s):</label>\n");
-            for (String label : labels) {
-                builder.append("\t\t\t\t\t\t\t<p>");
-                builder.append(label);
-                builder.append("</p>\n");
-            }
-            builder.append("\t\t\t\t\t\t</div>\n");
-            str = str.replace("$$labels$$", builder.toString());
-        } else {
-            str = str.replace("$$labels$$", "");
-        }
         
-        final List<String> notes = cell.getNotes();
-        builder.setLength(0);
-        if ((notes != null) && (!notes.isEmpty())) {
-            builder.append("<div class=\"note\">\n");
-            builder.append("\t\t\t\t\t\t\t<label>Nota(s):</label>\n");
-            for (String note : notes) {
-                builder.append("\t\t\t\t\t\t\t<p>");
-                builder.append(note);
-                builder.append("</p>\n");
-            }
-            builder.append("\t\t\t\t\t\t</div>\n");
-            str = str.replace("$$notes$$", builder.toString());
-        } else {
-            str = str.replace("$$notes$$", "");
+        final String html = context.template.fill(holes, builder).toString();
+        RunMetrics.get().cellRendered(System.nanoTime() - begin);
+        StageEvents.endRender(event, cell, html.length());
+
+        return html;
+    }    
+
+    /**
+     * Creates the html of a note box (sources, labels or notes)
+     * @param label box label
+     * @param lines box lines
+     * @param builder auxiliary buffer
+     * @return the box html or an empty string if there are no lines
+     */
+    private static String notes(final String label,
+                                final List<String> lines,
+                                final StringBuilder builder) {
+        assert label != null;
+        assert builder != null;
+
+        if ((lines == null) || lines.isEmpty()) {
+            return "";
         }
-        
-        str = str.replace("$$father$$", cell.getElem().father.toString());
-        str = str.replace("$$qualifRec$$", cell.getElem().qualifRec.toString());
-        
         builder.setLength(0);
-        if ((tableOptions != null) && (!tableOptions.isEmpty())) {
-            str = str.replace("$$tableHeader$$", "<strong>Filtros usados para a"
-            + " geração da tabela de dados do TabNet</strong>\n<ul>\n");
-            /*str = str.replace("$$tableHeader$$", "<strong>Tabela de dados do "
-                      + "TabNet gerada com os seguintes filtros:</strong><br/><br/>");*/
-            for (Map.Entry<String,String> option : tableOptions.entrySet()) {
-                builder.append("\t\t\t\t\t\t<li><label>");
-                builder.append(option.getKey());
-                builder.append(":</label> ");
-                builder.append(option.getValue());
-                builder.append("</li>\n");
-            }        
-            str = str.replace("$$tableOptions$$", builder.toString() + "\n</ul>");
-        } else {
-            str = str.replace("$$tableHeader$$", "");
-            str = str.replace("$$tableOptions$$", "");
-        }                
-                
-        return str;
-    }    
+        builder.append("<div class=\"note\">\n");
+        builder.append("\t\t\t\t\t\t\t<label>");
+        builder.append(label);
+        builder.append(":</label>\n");
+        for (String line : lines) {
+            builder.append("\t\t\t\t\t\t\t<p>");
+            builder.append(line);
+            builder.append("</p>\n");
+        }
+        builder.append("\t\t\t\t\t\t</div>\n");
+
+        return builder.toString();
+    }
 }
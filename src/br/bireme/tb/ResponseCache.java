@@ -0,0 +1,215 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps the pages loaded by URLS at disk together with their ETag and
+ * Last-Modified headers, so a page can be revalidated with a conditional
+ * request (If-None-Match/If-Modified-Since) in the next run.
+ * Only responses with at least one of these headers are kept. Each response
+ * is a single file (headers followed by the content) replaced by an atomic
+ * move, so the headers always match the content.
+ * date: 20261018
+ */
+class ResponseCache {
+    private static final String SUFFIX = ".entry";
+    private static final int VERSION = 1;
+
+    private final File dir;
+
+    /**
+     * A cached response
+     */
+    static class Entry {
+        String location; // real location of the page (in case of redirect)
+        String etag;
+        String lastModified;
+        byte[] body; // response content, gzip/deflate already removed but
+                     // not converted from the page charset
+    }
+
+    /**
+     * Constructor
+     * @param dir directory where the responses will be stored
+     * @throws IOException 
+     */
+    ResponseCache(final File dir) throws IOException {
+        if (dir == null) {
+            throw new NullPointerException("dir");
+        }
+        if ((!dir.isDirectory()) && (!dir.mkdirs())) {
+            throw new IOException("directory [" + dir.getPath()
+                                                          + "] creation error");
+        }
+        this.dir = dir;
+    }
+
+    /**
+     * Looks for a cached response
+     * @param url requested url
+     * @param postParams post parameters or null if it is a GET request
+     * @return the cached response or null if there is not one
+     * @throws IOException 
+     */
+    Entry get(final URL url,
+              final String postParams) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        final File file = new File(dir, getKey(url, postParams) + SUFFIX);
+
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                       new BufferedInputStream(new FileInputStream(file)))) {
+            if ((in.readInt() != VERSION) 
+                                   || (!in.readUTF().equals(url.toString()))) {
+                return null;
+            }
+            final Entry entry = new Entry();
+            entry.location = in.readUTF();
+            entry.etag = readNullable(in);
+            entry.lastModified = readNullable(in);
+            entry.body = new byte[in.readInt()];
+            in.readFully(entry.body);
+
+            return entry;
+        } catch (EOFException ex) {
+            return null; // truncated by an older version or by hand
+        }
+    }
+
+    /**
+     * Stores a response. The response is stored only if it has an etag or a
+     * last modified date.
+     * @param url requested url
+     * @param postParams post parameters or null if it is a GET request
+     * @param location real location of the page (in case of redirect)
+     * @param etag ETag header or null
+     * @param lastModified Last-Modified header or null
+     * @param body response content, gzip/deflate already removed but not 
+     * converted from the page charset
+     * @throws IOException 
+     */
+    void put(final URL url,
+             final String postParams,
+             final String location,
+             final String etag,
+             final String lastModified,
+             final byte[] body) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (location == null) {
+            throw new NullPointerException("location");
+        }
+        if (body == null) {
+            throw new NullPointerException("body");
+        }
+        if ((etag == null) && (lastModified == null)) {
+            return;
+        }
+        final String key = getKey(url, postParams);
+        final File tmp = File.createTempFile(key, SUFFIX, dir);
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                out.writeUTF(url.toString());
+                out.writeUTF(location);
+                writeNullable(out, etag);
+                writeNullable(out, lastModified);
+                out.writeInt(body.length);
+                out.write(body);
+            }
+            Files.move(tmp.toPath(), new File(dir, key + SUFFIX).toPath(),
+                                       StandardCopyOption.REPLACE_EXISTING,
+                                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private static void writeNullable(final DataOutputStream out,
+                                      final String str) throws IOException {
+        assert out != null;
+
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readNullable(final DataInputStream in) 
+                                                            throws IOException {
+        assert in != null;
+
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * @param url requested url
+     * @param postParams post parameters or null
+     * @return the file name (without suffix) of a cached response
+     */
+    private static String getKey(final URL url,
+                                 final String postParams) {
+        assert url != null;
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(url.toString().getBytes(StandardCharsets.UTF_8));
+        if (postParams != null) {
+            digest.update((byte)'?');
+            digest.update(postParams.getBytes(StandardCharsets.UTF_8));
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (byte bt : digest.digest()) {
+            builder.append(Character.forDigit((bt >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(bt & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
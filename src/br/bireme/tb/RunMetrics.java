@@ -0,0 +1,371 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and stage times of a crawler run. There is one instance per
+ * process (see get), updated by the fetch, parse, render and write code and
+ * exposed as the JMX MBean br.bireme.tb:type=RunMetrics. Stage times are the
+ * sum of the times of all threads, so they can be greater than the elapsed
+ * time. Fetch latencies are counted in power of two milliseconds buckets.
+ * date: 20261018
+ */
+class RunMetrics implements RunMetricsMBean {
+    static final String OBJECT_NAME = "br.bireme.tb:type=RunMetrics";
+
+    /**
+     * Processing stages with measured time
+     */
+    enum Stage { FETCH, PARSE, RENDER, WRITE }
+
+    // latency buckets: < 1ms, < 2ms, < 4ms, ... , >= 2^(BUCKETS-2)ms
+    private static final int BUCKETS = 20;
+
+    private static final RunMetrics INSTANCE = new RunMetrics();
+
+    private final long start;
+    private final AtomicLong pagesFetched;
+    private final AtomicLong fetchErrors;
+    private final AtomicLong bytesDownloaded;
+    private final AtomicLongArray latency;
+    private final AtomicLong defCombinations;
+    private final AtomicLong csvParsed;
+    private final AtomicLong csvSkipped;
+    private final AtomicLong pagesSkipped;
+    private final AtomicLong tablesFailed;
+    private final AtomicLong cellsRendered;
+    private final AtomicLong cellsRefused;
+    private final AtomicLong filesWritten;
+    private final AtomicLong bytesWritten;
+    private final AtomicLongArray stageNanos;
+
+    private RunMetrics() {
+        start = System.nanoTime();
+        pagesFetched = new AtomicLong();
+        fetchErrors = new AtomicLong();
+        bytesDownloaded = new AtomicLong();
+        latency = new AtomicLongArray(BUCKETS);
+        defCombinations = new AtomicLong();
+        csvParsed = new AtomicLong();
+        csvSkipped = new AtomicLong();
+        pagesSkipped = new AtomicLong();
+        tablesFailed = new AtomicLong();
+        cellsRendered = new AtomicLong();
+        cellsRefused = new AtomicLong();
+        filesWritten = new AtomicLong();
+        bytesWritten = new AtomicLong();
+        stageNanos = new AtomicLongArray(Stage.values().length);
+    }
+
+    /**
+     * @return the metrics of this process
+     */
+    static RunMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server. Errors are only
+     * logged.
+     */
+    static void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException ex) {
+            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.WARNING,
+                                           "Can not register run metrics.", ex);
+        }
+    }
+
+    /**
+     * Records a page or csv download
+     * @param nanos download time (nanoseconds)
+     * @param error true if the download failed
+     */
+    void pageFetched(final long nanos,
+                     final boolean error) {
+        if (error) {
+            fetchErrors.incrementAndGet();
+        } else {
+            pagesFetched.incrementAndGet();
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        final int bucket = (millis <= 0) ? 0 : Math.min(BUCKETS - 1,
+                                   64 - Long.numberOfLeadingZeros(millis));
+        latency.incrementAndGet(bucket);
+        stageNanos.addAndGet(Stage.FETCH.ordinal(), nanos);
+    }
+
+    void bytesDownloaded(final long bytes) {
+        bytesDownloaded.addAndGet(bytes);
+    }
+
+    void defCombination() {
+        defCombinations.incrementAndGet();
+    }
+
+    /**
+     * Records a parsed csv file
+     * @param nanos parse time (nanoseconds)
+     */
+    void csvParsed(final long nanos) {
+        csvParsed.incrementAndGet();
+        stageNanos.addAndGet(Stage.PARSE.ordinal(), nanos);
+    }
+
+    void csvSkipped() {
+        csvSkipped.incrementAndGet();
+    }
+
+    /**
+     * Records a html or def page whose links could not be followed
+     */
+    void pageSkipped() {
+        pagesSkipped.incrementAndGet();
+    }
+
+    /**
+     * Records a table, or a block of its cells, that was found but could
+     * not be saved
+     */
+    void tableFailed() {
+        tablesFailed.incrementAndGet();
+    }
+
+    /**
+     * Records a rendered cell
+     * @param nanos render time (nanoseconds)
+     */
+    void cellRendered(final long nanos) {
+        cellsRendered.incrementAndGet();
+        stageNanos.addAndGet(Stage.RENDER.ordinal(), nanos);
+    }
+
+    void cellRefused() {
+        cellsRefused.incrementAndGet();
+    }
+
+    /**
+     * Records a written file
+     * @param bytes file size
+     * @param nanos write time (nanoseconds)
+     */
+    void fileWritten(final long bytes,
+                     final long nanos) {
+        filesWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+        stageNanos.addAndGet(Stage.WRITE.ordinal(), nanos);
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Override
+    public long getPagesFetched() {
+        return pagesFetched.get();
+    }
+
+    @Override
+    public long getFetchErrors() {
+        return fetchErrors.get();
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    @Override
+    public long[] getFetchLatencyHistogram() {
+        final long[] ret = new long[BUCKETS];
+
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            ret[idx] = latency.get(idx);
+        }
+        return ret;
+    }
+
+    @Override
+    public String[] getFetchLatencyBuckets() {
+        final String[] ret = new String[BUCKETS];
+
+        for (int idx = 0; idx < BUCKETS - 1; idx++) {
+            ret[idx] = "<" + (1L << idx) + "ms";
+        }
+        ret[BUCKETS - 1] = ">=" + (1L << (BUCKETS - 2)) + "ms";
+
+        return ret;
+    }
+
+    @Override
+    public long getDefCombinations() {
+        return defCombinations.get();
+    }
+
+    @Override
+    public long getCsvParsed() {
+        return csvParsed.get();
+    }
+
+    @Override
+    public long getCsvSkipped() {
+        return csvSkipped.get();
+    }
+
+    @Override
+    public long getPagesSkipped() {
+        return pagesSkipped.get();
+    }
+
+    @Override
+    public long getTablesFailed() {
+        return tablesFailed.get();
+    }
+
+    @Override
+    public long getCellsRendered() {
+        return cellsRendered.get();
+    }
+
+    @Override
+    public long getCellsRefused() {
+        return cellsRefused.get();
+    }
+
+    @Override
+    public long getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getFetchMillis() {
+        return getStageMillis(Stage.FETCH);
+    }
+
+    @Override
+    public long getParseMillis() {
+        return getStageMillis(Stage.PARSE);
+    }
+
+    @Override
+    public long getRenderMillis() {
+        return getStageMillis(Stage.RENDER);
+    }
+
+    @Override
+    public long getWriteMillis() {
+        return getStageMillis(Stage.WRITE);
+    }
+
+    /**
+     * @param stage processing stage
+     * @return time spent by all threads in the stage (milliseconds)
+     */
+    long getStageMillis(final Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos.get(stage.ordinal()));
+    }
+
+    @Override
+    public String toJson() {
+        final StringBuilder builder = new StringBuilder();
+        final String[] buckets = getFetchLatencyBuckets();
+        final long[] histogram = getFetchLatencyHistogram();
+
+        builder.append("{\n");
+        builder.append("  \"elapsedMillis\": ").append(getElapsedMillis());
+        builder.append(",\n  \"pagesFetched\": ").append(getPagesFetched());
+        builder.append(",\n  \"fetchErrors\": ").append(getFetchErrors());
+        builder.append(",\n  \"bytesDownloaded\": ")
+                                                  .append(getBytesDownloaded());
+        builder.append(",\n  \"fetchLatency\": {");
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            builder.append((idx == 0) ? "" : ", ");
+            builder.append('"').append(buckets[idx]).append("\": ");
+            builder.append(histogram[idx]);
+        }
+        builder.append("}");
+        builder.append(",\n  \"defCombinations\": ")
+                                                  .append(getDefCombinations());
+        builder.append(",\n  \"csvParsed\": ").append(getCsvParsed());
+        builder.append(",\n  \"csvSkipped\": ").append(getCsvSkipped());
+        builder.append(",\n  \"pagesSkipped\": ").append(getPagesSkipped());
+        builder.append(",\n  \"tablesFailed\": ").append(getTablesFailed());
+        builder.append(",\n  \"cellsRendered\": ").append(getCellsRendered());
+        builder.append(",\n  \"cellsRefused\": ").append(getCellsRefused());
+        builder.append(",\n  \"filesWritten\": ").append(getFilesWritten());
+        builder.append(",\n  \"bytesWritten\": ").append(getBytesWritten());
+        builder.append(",\n  \"stageMillis\": {");
+        for (Stage stage : Stage.values()) {
+            builder.append((stage.ordinal() == 0) ? "" : ", ");
+            builder.append('"').append(stage.name().toLowerCase(Locale.ROOT)).append("\": ");
+            builder.append(getStageMillis(stage));
+        }
+        builder.append("}\n}\n");
+
+        return builder.toString();
+    }
+
+    /**
+     * Writes the metrics (json) into a file
+     * @param file the destination file
+     * @throws IOException 
+     */
+    void writeJson(final File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -0,0 +1,50 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+/**
+ * JMX view of the run metrics (see RunMetrics). Times are in milliseconds.
+ * date: 20261018
+ */
+public interface RunMetricsMBean {
+    long getElapsedMillis();
+    long getPagesFetched();
+    long getFetchErrors();
+    long getBytesDownloaded();
+    long[] getFetchLatencyHistogram();
+    String[] getFetchLatencyBuckets();
+    long getDefCombinations();
+    long getCsvParsed();
+    long getCsvSkipped();
+    long getPagesSkipped();
+    long getTablesFailed();
+    long getCellsRendered();
+    long getCellsRefused();
+    long getFilesWritten();
+    long getBytesWritten();
+    long getFetchMillis();
+    long getParseMillis();
+    long getRenderMillis();
+    long getWriteMillis();
+    String toJson();
+}
@@ -0,0 +1,215 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.StringEscapeUtils;
+
+/**
+ * Writes the sitemap of the cell files: gzip compressed shards 
+ * (sitemap_N.xml.gz) and the sitemapindex.xml file. The urls are added in 
+ * the order of the given paths, so the shards of runs with the same cell 
+ * files are the same. A new shard is started when the current one reaches 
+ * the sitemap protocol limits (50,000 urls or 50 MB uncompressed). Only the 
+ * current shard is kept in memory.
+ * date: 20261018
+ */
+class Sitemap {
+    static final int MAX_URLS = 50000;
+    static final int MAX_BYTES = 50 * 1024 * 1024;
+
+    private static final byte[] HEADER = ("<?xml version=\"1.0\" "
+        + "encoding=\"UTF-8\"?>\n<urlset xmlns=\""
+        + "http://www.sitemaps.org/schemas/sitemap/0.9\">\n")
+                                           .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FOOTER = "</urlset>\n"
+                                           .getBytes(StandardCharsets.UTF_8);
+
+    private final OutputSink sink;
+    private final String siteUrl;
+    private final String lastmod;
+    private final int maxUrls;
+    private final int maxBytes;
+    private final StringBuilder builder;
+    private ByteArrayOutputStream buffer; // current shard (compressed)
+    private GZIPOutputStream shard;       // current shard or null
+    private int shardUrls;                // urls in the current shard
+    private long shardBytes;              // uncompressed shard size
+    private int shards;                   // number of shards written
+
+    /**
+     * Constructor
+     * @param sink where the files will be written. It is not closed.
+     * @param siteUrl url of the site root of the published files
+     */
+    Sitemap(final OutputSink sink,
+            final String siteUrl) {
+        this(sink, siteUrl, MAX_URLS, MAX_BYTES);
+    }
+
+    /**
+     * Constructor
+     * @param sink where the files will be written. It is not closed.
+     * @param siteUrl url of the site root of the published files
+     * @param maxUrls maximum number of urls of a shard
+     * @param maxBytes maximum uncompressed size of a shard
+     */
+    Sitemap(final OutputSink sink,
+            final String siteUrl,
+            final int maxUrls,
+            final int maxBytes) {
+        if (sink == null) {
+            throw new NullPointerException("sink");
+        }
+        if (siteUrl == null) {
+            throw new NullPointerException("siteUrl");
+        }
+        if (maxUrls <= 0) {
+            throw new IllegalArgumentException("maxUrls <= 0");
+        }
+        if (maxBytes <= HEADER.length + FOOTER.length) {
+            throw new IllegalArgumentException("maxBytes too small");
+        }
+        this.sink = sink;
+        this.siteUrl = siteUrl;
+        this.lastmod = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        this.maxUrls = maxUrls;
+        this.maxBytes = maxBytes;
+        this.builder = new StringBuilder();
+    }
+
+    /**
+     * Writes the shards with the urls of the cell files and the sitemap index
+     * @param paths cell file paths relative to the sink root (X/XNN/name.html)
+     * in the order they should appear in the shards
+     * @return number of sitemap shards written
+     * @throws IOException 
+     */
+    int write(final Iterable<String> paths) throws IOException {
+        if (paths == null) {
+            throw new NullPointerException("paths");
+        }
+        if (shards > 0) {
+            throw new IOException("sitemap already written");
+        }
+        for (String path : paths) {
+            addUrl(path);
+        }
+        if (shard != null) {
+            flushShard();
+        }
+
+        final StringBuilder index = new StringBuilder();
+        index.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        index.append("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+        for (int idx = 1; idx <= shards; idx++) {
+            index.append("\t<sitemap>\n");
+            index.append("\t\t<loc>");
+            index.append(siteUrl);
+            index.append("/");
+            index.append(getShardName(idx));
+            index.append("</loc>\n");
+            index.append("\t\t<lastmod>");
+            index.append(lastmod);
+            index.append("</lastmod>\n");
+            index.append("\t</sitemap>\n");
+        }
+        index.append("</sitemapindex>\n");
+        sink.write("sitemapindex.xml", ByteBuffer.wrap(
+                            index.toString().getBytes(StandardCharsets.UTF_8)));
+        return shards;
+    }
+
+    /**
+     * Adds the url of a cell file to the current shard
+     * @param path cell file path relative to the sink root
+     * @throws IOException 
+     */
+    private void addUrl(final String path) throws IOException {
+        assert path != null;
+
+        final int slash = path.lastIndexOf('/');
+
+        builder.setLength(0);
+        builder.append("\t<url>\n");
+        builder.append("\t\t<loc>");
+        builder.append(siteUrl);
+        builder.append("/");
+        builder.append(path, 0, slash + 1);
+        builder.append(StringEscapeUtils.escapeHtml4(
+                      URLEncoder.encode(path.substring(slash + 1), "UTF-8")));
+        builder.append("</loc>\n");
+        builder.append("\t\t<lastmod>");
+        builder.append(lastmod);
+        builder.append("</lastmod>\n");
+        builder.append("\t\t<changefreq>monthly</changefreq>\n");
+        builder.append("\t</url>\n");
+
+        final byte[] entry = builder.toString().getBytes(
+                                                      StandardCharsets.UTF_8);
+        if ((shard != null) && ((shardUrls >= maxUrls) || 
+                   (shardBytes + entry.length + FOOTER.length > maxBytes))) {
+            flushShard();
+        }
+        if (shard == null) {
+            buffer = new ByteArrayOutputStream();
+            shard = new GZIPOutputStream(buffer);
+            shard.write(HEADER);
+            shardBytes = HEADER.length;
+            shardUrls = 0;
+        }
+        shard.write(entry);
+        shardBytes += entry.length;
+        shardUrls++;
+    }
+
+    /**
+     * Closes the current shard and writes it into the sink
+     * @throws IOException 
+     */
+    private void flushShard() throws IOException {
+        assert shard != null;
+
+        shard.write(FOOTER);
+        shard.close();
+        shards++;
+        sink.write(getShardName(shards), ByteBuffer.wrap(buffer.toByteArray()));
+        shard = null;
+        buffer = null;
+    }
+
+    /**
+     * @param num shard number (from 1)
+     * @return shard file name
+     */
+    private static String getShardName(final int num) {
+        return "sitemap_" + num + ".xml.gz";
+    }
+}
@@ -0,0 +1,177 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Java Flight Recorder events of the fetch, parse, render and write stages.
+ * The events are only created if the JFR api (jdk.jfr) is available and the
+ * system property tb.jfr is not "false", otherwise every method is a no-op.
+ * The jdk.jfr classes are only referenced by JfrEvents, which is not loaded
+ * when the api is not available. A begin method returns an event token (or
+ * null if the event is not being recorded) to be given to the end method.
+ * Render events are sampled (one in RENDER_SAMPLE cells).
+ * date: 20261018
+ */
+final class StageEvents {
+    static final int RENDER_SAMPLE = 100;
+
+    private static volatile boolean enabled = isAvailable();
+
+    private StageEvents() {
+    }
+
+    /**
+     * @return true if the JFR events can be used
+     */
+    private static boolean isAvailable() {
+        if ("false".equals(System.getProperty("tb.jfr"))) {
+            return false;
+        }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Disables the events after an unexpected JFR error
+     * @param err the error
+     */
+    private static void disable(final Throwable err) {
+        enabled = false;
+        Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.WARNING,
+                                              "JFR events disabled.", err);
+    }
+
+    static Object beginFetch() {
+        if (enabled) {
+            try {
+                return JfrEvents.beginFetch();
+            } catch (LinkageError err) {
+                disable(err);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param event token returned by beginFetch
+     * @param url loaded url
+     * @param method http method (GET or POST)
+     * @param status http response status (0 if unknown)
+     * @param bytes downloaded bytes
+     */
+    static void endFetch(final Object event,
+                         final String url,
+                         final String method,
+                         final int status,
+                         final long bytes) {
+        if (event != null) {
+            JfrEvents.endFetch(event, url, method, status, bytes);
+        }
+    }
+
+    static Object beginParse() {
+        if (enabled) {
+            try {
+                return JfrEvents.beginParse();
+            } catch (LinkageError err) {
+                disable(err);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param event token returned by beginParse
+     * @param title table title
+     * @param rows number of data rows
+     * @param columns number of data columns
+     */
+    static void endParse(final Object event,
+                         final String title,
+                         final int rows,
+                         final int columns) {
+        if (event != null) {
+            JfrEvents.endParse(event, title, rows, columns);
+        }
+    }
+
+    /**
+     * @param cellIdx order number of the cell in its table. Only one in
+     * RENDER_SAMPLE cells are recorded.
+     * @return the event token or null
+     */
+    static Object beginRender(final int cellIdx) {
+        if (enabled && (cellIdx % RENDER_SAMPLE == 0)) {
+            try {
+                return JfrEvents.beginRender();
+            } catch (LinkageError err) {
+                disable(err);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param event token returned by beginRender
+     * @param cell the rendered cell
+     * @param length length of the created html
+     */
+    static void endRender(final Object event,
+                          final Cell cell,
+                          final int length) {
+        if (event != null) {
+            JfrEvents.endRender(event, cell, length);
+        }
+    }
+
+    static Object beginWrite() {
+        if (enabled) {
+            try {
+                return JfrEvents.beginWrite();
+            } catch (LinkageError err) {
+                disable(err);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param event token returned by beginWrite
+     * @param path written file path
+     * @param bytes file size
+     */
+    static void endWrite(final Object event,
+                         final String path,
+                         final long bytes) {
+        if (event != null) {
+            JfrEvents.endWrite(event, path, bytes);
+        }
+    }
+}
@@ -37,7 +37,7 @@ class Table {
     private String rowHeader; // label at rowXcolumn
     private ArrayList<ArrayList<String>> header; // label of each column
     private ArrayList<String> row; // label of each data line
-    private ArrayList<ArrayList<String>> lines; // line of the table data
+    private ColumnStore data; // table data (row x column values)
     private ArrayList<String> sources; // table other info
     private ArrayList<String> labels;  // table other info
     private ArrayList<String> notes;   // table other info
@@ -90,12 +90,12 @@ class Table {
         this.header = header;
     }
 
-    ArrayList<ArrayList<String>> getLines() {
-        return lines;
+    ColumnStore getData() {
+        return data;
     }
 
-    void setLines(final ArrayList<ArrayList<String>> lines) {
-        this.lines = lines;
+    void setData(final ColumnStore data) {
+        this.data = data;
     }
 
     List<String> getSources() {
@@ -162,11 +162,13 @@ class Table {
             builder.append(line);
         }
         builder.append("\nLine:");
-        for (List<String> line : lines) {
+        for (int rowIdx = 0; rowIdx < data.getRowCount(); rowIdx++) {
             builder.append("\n");
-            for (String cel : line) {
-                builder.append("\t");
-                builder.append(cel);
+            for (int col = 0; col < data.getColumnCount(); col++) {
+                if (data.isPresent(rowIdx, col)) {
+                    builder.append("\t");
+                    builder.append(data.getValue(rowIdx, col));
+                }
             }
         }
         if ((sources != null) && (!sources.isEmpty())) {
@@ -0,0 +1,134 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Gives the number of each table, used in the cell file names. A table keeps
+ * its number while its key (url of the page with the csv link + post
+ * parameters) is known, so the cell file names do not depend on the order
+ * the tables were loaded.
+ * date: 20261018
+ */
+class TableNumbers {
+    private final Map<String,Integer> numbers; // (key, table number)
+    private final Set<String> used;            // keys used in this run
+    private int last;                          // greatest table number
+
+    /**
+     * Constructor. New keys are numbered from 1.
+     */
+    TableNumbers() {
+        this(new HashMap<String,Integer>());
+    }
+
+    /**
+     * Constructor
+     * @param numbers table numbers of a previous run (key, table number)
+     */
+    TableNumbers(final Map<String,Integer> numbers) {
+        if (numbers == null) {
+            throw new NullPointerException("numbers");
+        }
+        this.numbers = new HashMap<>(numbers);
+        this.used = new HashSet<>();
+        for (int num : numbers.values()) {
+            last = Math.max(last, num);
+        }
+    }
+
+    /**
+     * Gives the number of a table
+     * @param elem the table csv url and its related information
+     * @return the table number
+     */
+    synchronized int get(final UrlElem elem) {
+        if (elem == null) {
+            throw new NullPointerException("elem");
+        }
+        final String base = getKey(elem);
+        String key = base;
+
+        // two tables with the same key can not share a number
+        for (int idx = 2; used.contains(key); idx++) {
+            key = base + "#" + idx;
+        }
+        used.add(key);
+
+        Integer num = numbers.get(key);
+        if (num == null) {
+            num = ++last;
+            numbers.put(key, num);
+        }
+        return num;
+    }
+
+    /**
+     * Gives the number of a table if its key has a number of a previous run
+     * that was not used yet in this run. Unlike get, the result does not 
+     * depend on the order the tables are found.
+     * @param elem the table csv url and its related information
+     * @return the table number or null if the key is new
+     */
+    synchronized Integer getKnown(final UrlElem elem) {
+        if (elem == null) {
+            throw new NullPointerException("elem");
+        }
+        final String key = getKey(elem);
+        final Integer num = numbers.get(key);
+
+        if ((num == null) || used.contains(key)) {
+            return null;
+        }
+        used.add(key);
+
+        return num;
+    }
+
+    /**
+     * @param elem the table csv url and its related information
+     * @return the table key (url of the page with the csv link + post 
+     * parameters)
+     */
+    static String getKey(final UrlElem elem) {
+        if (elem == null) {
+            throw new NullPointerException("elem");
+        }
+        return (elem.fatherParams == null) ? elem.father.toString()
+                                       : elem.father + "?" + elem.fatherParams;
+    }
+
+    /**
+     * @return the numbers of the tables of the previous runs and of this one
+     * (key, table number). Keys not used in this run are kept so a table that
+     * comes back gets its old number.
+     */
+    synchronized Map<String,Integer> getAll() {
+        return new TreeMap<>(numbers);
+    }
+}
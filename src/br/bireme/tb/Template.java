@@ -0,0 +1,161 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text template with $$name$$ holes. The template is split only once into
+ * literal segments and hole slots, so filling it is a single append pass.
+ * date: 20261018
+ */
+class Template {
+    private static final String MARK = "$$";
+
+    private final String[] literals; // literals[i] comes before slots[i]
+    private final int[] slots;       // hole indexes (see names)
+
+    /**
+     * Constructor
+     * @param text template text
+     * @param names names of the holes to be filled. Any other $$xxx$$ text
+     * is kept as it is.
+     */
+    Template(final String text,
+             final String... names) {
+        if (text == null) {
+            throw new NullPointerException("text");
+        }
+        if (names == null) {
+            throw new NullPointerException("names");
+        }
+        final Map<String,Integer> index = new HashMap<>();
+        for (int idx = 0; idx < names.length; idx++) {
+            index.put(names[idx], idx);
+        }
+        final List<String> lits = new ArrayList<>();
+        final List<Integer> slts = new ArrayList<>();
+        int start = 0;  // begin of the current literal
+        int pos = 0;    // search position
+
+        while (true) {
+            final int open = text.indexOf(MARK, pos);
+            if (open == -1) {
+                break;
+            }
+            final int close = text.indexOf(MARK, open + MARK.length());
+            if (close == -1) {
+                break;
+            }
+            final Integer slot = 
+                         index.get(text.substring(open + MARK.length(), close));
+            if (slot == null) {
+                pos = open + 1;
+            } else {
+                lits.add(text.substring(start, open));
+                slts.add(slot);
+                start = close + MARK.length();
+                pos = start;
+            }
+        }
+        lits.add(text.substring(start));
+
+        literals = lits.toArray(new String[lits.size()]);
+        slots = new int[slts.size()];
+        for (int idx = 0; idx < slots.length; idx++) {
+            slots[idx] = slts.get(idx);
+        }
+    }
+
+    private Template(final String[] literals,
+                     final int[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    /**
+     * Creates a new template with some holes already filled
+     * @param values hole values in the same order of the constructor names.
+     * Holes with null values are kept unfilled.
+     * @return the new template. It uses the same hole names of this one.
+     */
+    Template bind(final CharSequence[] values) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        final List<String> lits = new ArrayList<>();
+        final List<Integer> slts = new ArrayList<>();
+        final StringBuilder builder = new StringBuilder(literals[0]);
+
+        for (int idx = 0; idx < slots.length; idx++) {
+            final CharSequence value = values[slots[idx]];
+            if (value == null) {
+                lits.add(builder.toString());
+                slts.add(slots[idx]);
+                builder.setLength(0);
+            } else {
+                builder.append(value);
+            }
+            builder.append(literals[idx + 1]);
+        }
+        lits.add(builder.toString());
+
+        final int[] nslots = new int[slts.size()];
+        for (int idx = 0; idx < nslots.length; idx++) {
+            nslots[idx] = slts.get(idx);
+        }
+        return new Template(lits.toArray(new String[lits.size()]), nslots);
+    }
+
+    /**
+     * Fills the template holes
+     * @param values hole values in the same order of the constructor names.
+     * Null values are appended as empty strings.
+     * @param out where the filled template will be appended
+     * @return out
+     */
+    StringBuilder fill(final CharSequence[] values,
+                       final StringBuilder out) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        if (out == null) {
+            throw new NullPointerException("out");
+        }
+        final int len = slots.length;
+
+        for (int idx = 0; idx < len; idx++) {
+            out.append(literals[idx]);
+            final CharSequence value = values[slots[idx]];
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        out.append(literals[len]);
+
+        return out;
+    }
+}
@@ -24,31 +24,40 @@ package br.bireme.tb;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.logging.FileHandler;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.apache.commons.lang3.StringEscapeUtils;
 
 /**
  *
@@ -68,23 +77,39 @@ public class URLS {
     public static final Pattern EDITION_PAT = Pattern.compile(
            "\\?node=([^\\&]+)\\&lang=\\w+\\&version=([^\\s]+)");
     
-    private static final Pattern CSV_PATTERN = Pattern.compile(
+    static final Pattern CSV_PATTERN = Pattern.compile(
                                          "(?i)<a href=\"?([^\\.\n]+?.csv)\"?>");
-    private static final Pattern QUALIF_REC_PATTERN = Pattern.compile(
+    static final Pattern QUALIF_REC_PATTERN = Pattern.compile(
                     "(?i)<a href=\"([^\"]+)\">.*?Ficha de qualificação.*?</a>");
     private static final Pattern URL_PATTERN = Pattern.compile(
                                  "(?s)<a[^>]*?href=\"([^\"]+)\"[^>]*?>.+?</a>");
-    private static final int MAX_LEVEL = 3;
-    
-    private static final Pattern STAR_PAT = Pattern.compile("\\*+");
-    
-    private static final Pattern REFUSE_PAT =
-                                          Pattern.compile("\\s*[\\.\\*]+\\s*");
+    static final int MAX_LEVEL = 3;
+
+    public static final int DEFAULT_THREADS = 4;
+
+    // controls the number and the rate of requests sent to each host
+    private static volatile FetchScheduler scheduler = new FetchScheduler();
+
+    // http client shared by all page loads
+    private static final HttpFetcher fetcher = new HttpFetcher();
+
+    // pages loaded in previous runs or null if there is no cache
+    private static volatile ResponseCache cache = null;
+
+    // archive where the responses are recorded to/replayed from or null
+    private static volatile CrawlArchive archive = null;
     
 
     public static void generateFileStructure(final String url,
                                              final String rootDir)
                                                             throws IOException {
+        generateFileStructure(url, rootDir, DEFAULT_THREADS);
+    }
+
+    public static void generateFileStructure(final String url,
+                                             final String rootDir,
+                                             final int threads)
+                                                            throws IOException {
         if (url == null) {
             throw new NullPointerException("url");
         }
@@ -109,53 +134,213 @@ public class URLS {
             Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).severe(msg);
             throw new IOException(msg);
         }
+        try (OutputSink sink = new DirectorySink(root)) {
+            generateFileStructure(url, sink, threads);
+        }
+        EventLog.message("Files saved at: " + root.getAbsolutePath());
+    }
 
-        System.out.println("Searching cvs files\n");
-        final Set<String> files = generateCells(url, root);
-        System.out.println("Total cell files created: " + files.size());
+    /**
+     * Creates the same files of generateFileStructure, but as entries of a
+     * single zip file (same paths), written sequentially.
+     * @param url html file where the csv links will be recursively searched.
+     * @param zipFile the zip file to be created
+     * @param compress if true the entries are deflated, otherwise stored
+     * @param threads number of threads used to load the pages
+     * @throws IOException 
+     */
+    public static void generateFileArchive(final String url,
+                                           final String zipFile,
+                                           final boolean compress,
+                                           final int threads)
+                                                            throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (zipFile == null) {
+            throw new NullPointerException("zipFile");
+        }
+        if (url.trim().endsWith(".def")) {
+            throw new NullPointerException(
+                                     "initial url file can not be a def file.");
+        }
+        final File zip = new File(zipFile);
+
+        try (OutputSink sink = new ZipSink(zip, compress)) {
+            generateFileStructure(url, sink, threads);
+        }
+        EventLog.message("Files saved at: " + zip.getAbsolutePath());
+    }
+
+    /**
+     * Updates the files created by a previous generateFileStructure. Only new
+     * or changed files are written and the obsolete ones are deleted, but
+     * only if no page, csv file or table was skipped because of an error. The
+     * content hashes and table numbers are kept at 'rootDir'.manifest and
+     * the list of changed files is written at 'rootDir'.changes
+     * @param url html file where the csv links will be recursively searched.
+     * @param rootDir the output directory
+     * @param threads number of threads used to load the pages
+     * @throws IOException 
+     */
+    public static void generateFileUpdate(final String url,
+                                          final String rootDir,
+                                          final int threads)
+                                                            throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (rootDir == null) {
+            throw new NullPointerException("rootDir");
+        }
+        if (url.trim().endsWith(".def")) {
+            throw new NullPointerException(
+                                     "initial url file can not be a def file.");
+        }
+        final File root = new File(rootDir);
+        final String base = root.getPath();
+        final IncrementalSink sink = new IncrementalSink(root, 
+                      new File(base + ".manifest"), new File(base + ".changes"));
+        final long skipped = getSkipped();
 
         try {
-            createAllSitemap(files, root);
-        } catch (IOException ioe) {
-            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.SEVERE,
+            generateFileStructure(url, sink, sink.getTableNumbers(), threads);
+            // a page or csv that could not be loaded would look like removed
+            // tables, so obsolete files are only deleted after a clean crawl
+            if (getSkipped() == skipped) {
+                sink.commit();
+            } else {
+                EventLog.message("Pages, csv files or tables were skipped. "
+                                          + "Obsolete files were not deleted.");
+            }
+        } finally {
+            sink.close();
+        }
+        EventLog.message("Files updated at: " + root.getAbsolutePath() 
+                                                              + " (" + sink + ")");
+        EventLog.message("Changed files list: " + base + ".changes");
+    }
+
+    /**
+     * @return number of html/def pages, csv files and tables skipped because
+     * of an error since the program start
+     */
+    private static long getSkipped() {
+        final RunMetrics metrics = RunMetrics.get();
+
+        return metrics.getPagesSkipped() + metrics.getCsvSkipped() 
+                                                 + metrics.getTablesFailed();
+    }
+
+    /**
+     * Creates the cell files, the sitemaps and the index file
+     * @param url html file where the csv links will be recursively searched.
+     * @param sink where the files will be written. It is not closed.
+     * @param threads number of threads used to load the pages
+     * @throws IOException 
+     */
+    static void generateFileStructure(final String url,
+                                      final OutputSink sink,
+                                      final int threads) throws IOException {
+        generateFileStructure(url, sink, new TableNumbers(), threads);
+    }
+
+    /**
+     * Creates the cell files, the sitemaps and the index file
+     * @param url html file where the csv links will be recursively searched.
+     * @param sink where the files will be written. It is not closed.
+     * @param tableNums gives the table numbers used in the file names
+     * @param threads number of threads used to load the pages
+     * @throws IOException 
+     */
+    static void generateFileStructure(final String url,
+                                      final OutputSink sink,
+                                      final TableNumbers tableNums,
+                                      final int threads) throws IOException {
+        assert url != null;
+        assert sink != null;
+        assert tableNums != null;
+
+        EventLog.message("Searching cvs files\n");
+        try (PathRegistry files = generateCells(url, sink, tableNums, 
+                                                                    threads)) {
+            EventLog.message("Total cell files created: " + files.size());
+
+            try {
+                // from the sorted paths, so the shards do not depend on the
+                // order the cells were written
+                new Sitemap(sink, OUT_SITE_URL).write(files);
+            } catch (IOException ioe) {
+                Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.SEVERE,
                                            "Sitemap file creation error.", ioe);
-        }   
-        
-        try (final BufferedWriter writer = new BufferedWriter(new FileWriter(
-                                               new File(root, "index.html")))) {
-            writer.append("<!DOCTYPE html>\n");
-            writer.append("<html>\n");
-            writer.append(" <head>\n");
-            writer.append(" <meta charset=\"UTF-8\">\n");
-            writer.append(" </head>\n");
-            writer.append(" <body>\n");
-            writer.append(" <h1>Fichas de Qualificação</h1>\n");
-            writer.append(" <ul>\n");
-            for (String path : files) {                
-                writer.append(" <li>\n");
-                writer.append(" <a href=\"" + path + "\">" + path +"</a>\n");
-                writer.append(" </li>\n");
-            }
-            writer.append(" </ul>\n");            
-            writer.append(" </body>\n");
-            writer.append("</html>\n");
-        } catch (IOException ioe) {
-            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.SEVERE,
-                                             "Index file creation error.", ioe);
+            }   
+            try {
+                createIndex(files, sink);
+            } catch (IOException | IllegalStateException ex) {
+                Logger.getLogger(Logger.GLOBAL_LOGGER_NAME).log(Level.SEVERE,
+                                              "Index file creation error.", ex);
+            }
+        }
+    }
+
+    /**
+     * Creates the index.html file with links to all cell files. The file is
+     * composed in a temporary file and then mapped into memory, out of the
+     * heap.
+     * @param files cell file paths
+     * @param sink where the index file will be written
+     * @throws IOException 
+     */
+    private static void createIndex(final PathRegistry files,
+                                    final OutputSink sink) throws IOException {
+        assert files != null;
+        assert sink != null;
+
+        final File tmp = File.createTempFile("index", ".html");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(),
+                                                     StandardCharsets.UTF_8)) {
+                writer.write("<!DOCTYPE html>\n");
+                writer.write("<html>\n");
+                writer.write(" <head>\n");
+                writer.write(" <meta charset=\"UTF-8\">\n");
+                writer.write(" </head>\n");
+                writer.write(" <body>\n");
+                writer.write(" <h1>Fichas de Qualificação</h1>\n");
+                writer.write(" <ul>\n");
+                for (String path : files) {                
+                    writer.write(" <li>\n");
+                    writer.write(" <a href=\"" + path + "\">" + path +"</a>\n");
+                    writer.write(" </li>\n");
+                }
+                writer.write(" </ul>\n");            
+                writer.write(" </body>\n");
+                writer.write("</html>\n");
+            }
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), 
+                                                   StandardOpenOption.READ)) {
+                sink.write("index.html", channel.map(
+                         FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        } finally {
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
         }
-         
-        System.out.println("Files saved at: " + root.getAbsolutePath());
     }
     
     /**
      * Creates files associating each file with a table cell from a csv file
      * @param url html file where the csv links will be recursively searched.
      * @param root the output directory where the files will be created
-     * @return a list of new created file names
+     * @param threads number of threads used to load the pages
+     * @return a list of new created file names. All names are kept in memory,
+     * generateFileStructure should be used for a large number of cells.
      * @throws IOException 
      */
     public static Set<String> generateCells(final String url,
-                                            final File root) 
+                                            final File root,
+                                            final int threads) 
                                                             throws IOException {
         if (url == null) {
             throw new NullPointerException("url");
@@ -163,220 +348,360 @@ public class URLS {
         if (root == null) {
             throw new NullPointerException("root");
         }        
+        try (OutputSink sink = new DirectorySink(root);
+             PathRegistry paths = generateCells(url, sink, threads)) {
+            final Set<String> ret = new TreeSet<>();
+            for (String path : paths) {
+                ret.add(path);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Creates files associating each file with a table cell from a csv file
+     * @param url html file where the csv links will be recursively searched.
+     * @param sink where the files will be written. It is not closed.
+     * @param threads number of threads used to load the pages
+     * @return the new created file names. The caller must close it.
+     * @throws IOException 
+     */
+    static PathRegistry generateCells(final String url,
+                                      final OutputSink sink,
+                                      final int threads) throws IOException {
+        return generateCells(url, sink, new TableNumbers(), threads);
+    }
+
+    /**
+     * Creates files associating each file with a table cell from a csv file
+     * @param url html file where the csv links will be recursively searched.
+     * @param sink where the files will be written. It is not closed.
+     * @param tableNums gives the table numbers used in the file names
+     * @param threads number of threads used to load the pages
+     * @return the new created file names. The caller must close it.
+     * @throws IOException 
+     */
+    static PathRegistry generateCells(final String url,
+                                      final OutputSink sink,
+                                      final TableNumbers tableNums,
+                                      final int threads) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
+        }
+        if (sink == null) {
+            throw new NullPointerException("sink");
+        }        
+        if (tableNums == null) {
+            throw new NullPointerException("tableNums");
+        }        
         try {
-            Utils.copyDirectory(new File("template/css"), new File(root, "css"));
-            Utils.copyDirectory(new File("template/img"), new File(root, "img"));
+            copyToSink(new File("template/css"), "css", sink);
+            copyToSink(new File("template/img"), "img", sink);
         } catch (IOException ioe) {
                 Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
                        .log(Level.SEVERE, "skipping diretory: (css/img)", ioe);
         }
-        final Set<String> urls = loadCsvFromHtml(new URL(url), root);
-        
-        return urls;
+        return loadCsvFromHtml(new URL(url), sink, tableNums, threads);
     }
 
     /**
-     * Loads all cvs links from a root html page if possible otherwise find then
-     * recursively. Then the csv s will be loaded and the table cells will be
-     * saved at files.
-     * @param html root page where the csv will be searched
-     * @param root path where the files will be saved
-     * @return a list of new created file names
+     * Copies a file or a directory into an output sink
+     * @param source file or directory to be copied
+     * @param path destination path relative to the sink root
+     * @param sink where the files will be written
+     * @throws IOException 
+     */
+    private static void copyToSink(final File source,
+                                   final String path,
+                                   final OutputSink sink) throws IOException {
+        assert source != null;
+        assert path != null;
+        assert sink != null;
+
+        if (source.isDirectory()) {
+            final String[] children = source.list();
+            for (String child : children) {
+                copyToSink(new File(source, child), path + "/" + child, sink);
+            }
+        } else {
+            sink.write(path, ByteBuffer.wrap(Files.readAllBytes(
+                                                             source.toPath())));
+        }
+    }
+
+    /**
+     * Writes a text file (UTF-8) into an output sink
+     * @param sink where the file will be written
+     * @param path file path relative to the sink root
+     * @param content file content
      * @throws IOException 
      */
-    private static Set<String> loadCsvFromHtml(final URL html,
-                                               final File root) 
+    private static void writeToSink(final OutputSink sink,
+                                    final String path,
+                                    final CharSequence content) 
                                                             throws IOException {
-        final Set<String> setUrls = new TreeSet<>();
-        final Set<URL> history = new HashSet<>();
+        assert sink != null;
+        assert path != null;
+        assert content != null;
 
-        final int aux[] = loadCsvFromHtml(html, null, null, 0, 0, setUrls, 
-                                                                 history, root);
-        System.out.println("\nTotal csv files parsed: " + aux[1]);
-        
-        return setUrls;
+        sink.write(path, StandardCharsets.UTF_8.encode(CharBuffer.wrap(content)));
     }
 
     /**
      * Loads all cvs links from a root html page if possible otherwise find then
      * recursively. Then the csv s will be loaded and the table cells will be
      * saved at files.
-     * @param html
-     * @param postParam
-     * @param tableOptions
-     * @param tableNum
-     * @param level
-     * @param setUrls
-     * @param history
-     * @param root
-     * @return array of int { number of the last table generated, number of csv files read }
+     * @param html root page where the csv will be searched
+     * @param sink where the files will be saved
+     * @param tableNums gives the table numbers used in the file names
+     * @param threads number of threads used to load the pages
+     * @return the new created file names. The caller must close it.
      * @throws IOException 
      */
-    private static int[] loadCsvFromHtml(final URL html,
-                                         final String postParam,
-                                         final Map<String,String> tableOptions,
-                                         final int tableNum,
-                                         final int level,
-                                         final Set<String> setUrls,
-                                         final Set<URL> history,
-                                         final File root) throws IOException {
-        assert html != null;
-        assert tableNum >= 0;
-        assert level >= 0;
-        assert setUrls != null;
-        assert history != null;
-        assert root != null;
-        
-        int[] ret = new int[] { tableNum, 0 };
-        
-        if ((postParam != null) || (!history.contains(html))) {
-            if (level <= MAX_LEVEL) {
-                history.add(html);
-
-                final String[] page;
-                try {
-                    page = (postParam == null) ? loadPageGet(html)
-                                               : loadPagePost(html, postParam);
-                } catch (IOException ioe) {
-                    Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
-                         .log(Level.SEVERE, "error loading file: [" + html 
-                                        + "] params: [" + postParam + "]", ioe);
-                    return ret;
-                }    
-                final String content = page[1];
-                final Matcher mat = CSV_PATTERN.matcher(content);
-
-                if (mat.find()) {   // Found a cvs link in that page  
-                    final Matcher mat2 = QUALIF_REC_PATTERN.matcher(content);
-                    if (mat2.find()) {                        
-                        final UrlElem elem = new UrlElem();
-                        elem.father = html;
-                        elem.fatherParams = postParam;
-                        elem.tableOptions = tableOptions;
-                        elem.csv = withDomain(html, mat.group(1));
-                        elem.qualifRec = withDomain(html, mat2.group(1));
-                        try {
-                            final String[] csvpage = loadPageGet(elem.csv);
-                            final CSV_File csv = new CSV_File();
-                            final Table table = csv.parse(csvpage[1], 
-                                                                 CSV_SEPARATOR);
-
-                            genCellsFromTable(table, elem, root, setUrls, 
-                                                                      ++ret[0]);
-                            ret[1] = 1;
-                        } catch (Exception ex) {
-                            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
-                           .log(Level.SEVERE, "skipping file: " + elem.csv, ex);
-                        }   
-                    }
-                } else {            // Did not find a cvs link in that page
-                    if (postParam != null) {
-                        Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
-                              .log(Level.SEVERE, 
-                         " skipping loadCsvFromHtml/Def file: " + html + 
-                         " params:" + postParam + 
-                         "\nCSV link not found into def page [" + 
-                         findErrorMessage(content) + "]");                        
-                    }
-                    final Set<URL> urls = getPageDefHtmlUrls(
-                                            new URL(page[0]), content, history);
-                    for (URL url : urls) {
-                        try {
-                            final String file = url.getFile();
-                            final int[] aux;
-                            if (file.endsWith(".def")) {
-                                aux = loadCsvFromDef(url, ret[0], setUrls, 
-                                                                 history, root);                                
-                            } else {
-                                aux = loadCsvFromHtml(url, null, 
-                                               null, ret[0], level + 1, setUrls, 
-                                                                 history, root);
-                            }
-                            ret[0] = aux[0];
-                            ret[1] += aux[1];
-                        } catch (IOException ioe) {                             
-                            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
-                                           .log(Level.SEVERE, 
-                                           "skipping loadCsvFromHtml/Def file: " 
-                                                                    + url, ioe);
-                            //throw ioe;
-                        }
-                    }
-                }
-            }
-        }
-        
-        return ret;
+    private static PathRegistry loadCsvFromHtml(final URL html,
+                                                final OutputSink sink,
+                                                final TableNumbers tableNums,
+                                                final int threads) 
+                                                            throws IOException {
+        return new Crawler(sink, tableNums, threads).crawl(html);
     }
-    
+
     /**
      * Given a table, generates all of its cells and save each one into a file
      * @param table table used to generate cells
      * @param elem 
-     * @param root root directory where the files will be created
+     * @param writer writer of the created files
      * @param urls
      * @param tableNum table number used to create the file name
      */
-    private static void genCellsFromTable(final Table table,
+    static void genCellsFromTable(final Table table,
                                           final UrlElem elem,
-                                          final File root,
-                                          final Set<String> urls,
+                                          final OutputWriter writer,
+                                          final PathRegistry urls,
                                           final int tableNum) {
         assert table != null;
         assert elem != null;
-        assert root != null;
+        assert writer != null;
         assert urls != null;
         assert tableNum >= 0;
+
+        genCellsFromRows(table, elem, null, writer, urls, tableNum, 0, 
+                                                     table.getRow().size(), 1);
+    }
+
+    /**
+     * Given some rows of a table, generates their cells and save each one into
+     * a file
+     * @param table table used to generate cells
+     * @param elem 
+     * @param context render context of the table or null to create it when
+     * the first cell is saved
+     * @param writer writer of the created files
+     * @param urls
+     * @param tableNum table number used to create the file name
+     * @param fromRow first row (inclusive)
+     * @param toRow last row (exclusive)
+     * @param firstIdx order number of the first cell of fromRow (see 
+     * countCells)
+     */
+    static void genCellsFromRows(final Table table,
+                                 final UrlElem elem,
+                                 final RIPSA.Context context,
+                                 final OutputWriter writer,
+                                 final PathRegistry urls,
+                                 final int tableNum,
+                                 final int fromRow,
+                                 final int toRow,
+                                 final int firstIdx) {
+        assert table != null;
+        assert elem != null;
+        assert writer != null;
+        assert urls != null;
+        assert tableNum >= 0;
+        assert fromRow >= 0;
+        assert toRow >= fromRow;
+        assert firstIdx > 0;
                 
-        final ArrayList<ArrayList<String>> elems = table.getLines();
-        final Iterator<ArrayList<String>> yit = elems.iterator();
-        int idx = 1;
-
-        for (String row : table.getRow()) {
-            final Iterator<String> xit = yit.next().iterator();            
-            for (List<String> hdr : table.getHeader()) {
-                if (xit.hasNext()) {
-                    final Cell cell = new Cell();
-                    cell.setIdx(idx++);
-                    cell.setElem(elem);
-                    cell.setHeader(hdr);                                                
-                    cell.setNotes(table.getNotes());
-                    cell.setRow(row);
-                    cell.setScope(table.getScope());
-                    cell.setSources(table.getSources());
-                    cell.setSubtitle(table.getSubtitle());
-                    cell.setTitle(table.getTitle());
-                    cell.setValue(xit.next());
-                    cell.setLabels(adjustLabel(cell.getValue(), 
-                                                            table.getLabels()));
-                    final Matcher mat = REFUSE_PAT.matcher(cell.getValue());
-                    if (!mat.matches()) {
-                        try {
-                            urls.add(saveToFile(cell, root, tableNum));
-                        } catch (IOException ioe) {
-                            Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
-                                  .log(Level.SEVERE, "Can not save file.", ioe);
+        final ColumnStore data = table.getData();
+        final List<ArrayList<String>> header = table.getHeader();
+        final List<String> rows = table.getRow();
+        final List<String> labels = table.getLabels();
+        final Map<Integer,List<String>> starLabels = new HashMap<>();
+        final int columns = Math.min(header.size(), data.getColumnCount());
+        // The same cell object is moved over all rows values. Only the
+        // value dependent fields are changed for each saved cell.
+        final Cell cell = newTableCell(table, elem);
+        RIPSA.Context ctx = context;
+        int idx = firstIdx;
+        boolean failed = false;
+
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < columns; col++) {
+                if (data.isPresent(row, col)) {
+                    final int cellIdx = idx++;
+                    if (data.isRefused(row, col)) {
+                        RunMetrics.get().cellRefused();
+                        continue;
+                    }
+                    final int starNum = data.getStars(row, col);
+                    List<String> cellLabels = starLabels.get(starNum);
+                    if (cellLabels == null) {
+                        cellLabels = adjustLabel(starNum, labels);
+                        starLabels.put(starNum, cellLabels);
+                    }
+                    cell.setIdx(cellIdx);
+                    cell.setHeader(header.get(col));                                                
+                    cell.setRow(rows.get(row));
+                    cell.setValue(data, row, col);
+                    cell.setLabels(cellLabels);
+                    try {
+                        if (ctx == null) {
+                            ctx = RIPSA.newContext(cell);
                         }
+                        urls.add(saveToFile(cell, ctx, writer, tableNum));
+                    } catch (IOException ioe) {
+                        failed = true;
+                        Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
+                              .log(Level.SEVERE, "Can not save file.", ioe);
                     }
                 }
             }
         }
+        if (failed) {
+            RunMetrics.get().tableFailed();
+        }
+    }
+
+    /**
+     * Creates a cell with the data shared by all cells of a table
+     * @param table the cell table
+     * @param elem 
+     * @return the new cell
+     */
+    static Cell newTableCell(final Table table,
+                             final UrlElem elem) {
+        assert table != null;
+        assert elem != null;
+
+        final Cell cell = new Cell();
+
+        cell.setElem(elem);
+        cell.setNotes(table.getNotes());
+        cell.setScope(table.getScope());
+        cell.setSources(table.getSources());
+        cell.setSubtitle(table.getSubtitle());
+        cell.setTitle(table.getTitle());
+
+        return cell;
+    }
+
+    /**
+     * Counts the cells (saved or refused) of some rows of a table
+     * @param table the table
+     * @param fromRow first row (inclusive)
+     * @param toRow last row (exclusive)
+     * @return the number of cells
+     */
+    static int countCells(final Table table,
+                          final int fromRow,
+                          final int toRow) {
+        assert table != null;
+
+        final ColumnStore data = table.getData();
+        final int columns = Math.min(table.getHeader().size(), 
+                                                       data.getColumnCount());
+        int count = 0;
+
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < columns; col++) {
+                if (data.isPresent(row, col)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks if a cell value has no data, that is, if it is only dots and/or
+     * stars. Spaces and '+' are ignored as they are removed from the cell
+     * value. Same as matching "\\s*[\\.\\*]+\\s*" with the cell value, but
+     * without creating objects.
+     * @param value the raw cell value
+     * @return true if the cell should not be saved
+     */
+    static boolean isRefused(final String value) {
+        assert value != null;
+
+        final int len = value.length();
+        int state = 0; // 0 - leading spaces, 1 - dots/stars, 2 - trailing spaces
+
+        for (int idx = 0; idx < len; idx++) {
+            final char ch = value.charAt(idx);
+            if ((ch == ' ') || (ch == '+')) {
+                continue;
+            }
+            if ((ch == '.') || (ch == '*')) {
+                if (state == 2) {
+                    return false;
+                }
+                state = 1;
+            } else if (isRegexSpace(ch)) {
+                if (state == 1) {
+                    state = 2;
+                }
+            } else {
+                return false;
+            }
+        }
+        return state > 0;
+    }
+
+    // Same characters as the \s regular expression class
+    private static boolean isRegexSpace(final char ch) {
+        return (ch == ' ') || (ch == '\t') || (ch == '\n') || (ch == '\u000B')
+                                         || (ch == '\f') || (ch == '\r');
+    }
+
+    /**
+     * Counts the stars of the first star sequence of a cell value
+     * @param cellValue the raw cell value (ending with stars ***)
+     * @return the number of stars
+     */
+    static int starCount(final String cellValue) {
+        assert cellValue != null;
+
+        final int first = cellValue.indexOf('*');
+        if (first == -1) {
+            return 0;
+        }
+        final int len = cellValue.length();
+        int count = 0;
+
+        // spaces and '+' are removed from the cell value, so they are skipped
+        for (int idx = first; idx < len; idx++) {
+            final char ch = cellValue.charAt(idx);
+            if (ch == '*') {
+                count++;
+            } else if ((ch != ' ') && (ch != '+')) {
+                break;
+            }
+        }
+        return count;
     }
         
     /**
-     * Returns only labels related with a given cell value
-     * @param cellValue the cell value (ending with stars ***)
+     * Returns only labels related with a given number of stars
+     * @param starNum the number of stars of the cell value (ending with stars ***)
      * @param labels all labels of a table
      * @return  only labels with the right number of stars.
      */
-    private static List<String> adjustLabel(final String cellValue,
+    private static List<String> adjustLabel(final int starNum,
                                             final List<String> labels) {
-        assert cellValue != null;
+        assert starNum >= 0;
         assert labels != null;
         
         final List<String> ret = new ArrayList<>();
-        final Matcher smat = STAR_PAT.matcher(cellValue);
-        final int starNum = smat.find() ? smat.group().length() : 0;      
         
         if (starNum > 0) {
             final char[] chars = new char[starNum];
@@ -394,41 +719,31 @@ public class URLS {
     }
     
     /**
-     * Extracts cvs links by combining fields from a def file.
-     * @param def url of the def page from which the cvs will be extracted
-     * @return array of int { number of the last table generated, number of csv files read }
-     * @throws IOException
+     * Changes the scheduler used by loadPageGet and loadPagePost
+     * @param fetchScheduler the new scheduler
      */
-    private static int[] loadCsvFromDef(final URL def,
-                                        final int tableNum,
-                                        final Set<String> setUrls,
-                                        final Set<URL> history,
-                                        final File root) throws IOException {
-        assert def != null;
-        assert tableNum >= 0;
-        assert setUrls != null;
-        assert history != null;
-        assert root != null;
-        
-        final Set<DEF_File.DefUrls> urls = new DEF_File().generateDefUrls(def);
-        final int[] ret = new int[2];
-        ret[0] = tableNum;
-        
-        for (DEF_File.DefUrls url : urls) {            
-            try {
-                final int[] aux = loadCsvFromHtml(new URL(url.url), 
-                        url.postParams, url.options, ret[0], MAX_LEVEL, setUrls, 
-                                                                 history, root);
-                ret[0] = aux[0];
-                ret[1] += aux[1];
-            } catch (IOException ioe) {
-                Logger.getLogger(Logger.GLOBAL_LOGGER_NAME)
-                    .log(Level.SEVERE, "skipping loadCsvFromHtml file: " 
-                                                                + url.url, ioe);
-            }
+    static void setFetchScheduler(final FetchScheduler fetchScheduler) {
+        if (fetchScheduler == null) {
+            throw new NullPointerException("fetchScheduler");
         }
-        
-        return ret;
+        scheduler = fetchScheduler;
+    }
+
+    /**
+     * Changes the cache used by loadPageGet and loadPagePost
+     * @param responseCache the new cache or null to not use a cache
+     */
+    static void setResponseCache(final ResponseCache responseCache) {
+        cache = responseCache;
+    }
+
+    /**
+     * Changes the archive used by loadPageGet and loadPagePost. If the archive
+     * is in replay mode, no page will be loaded from the network.
+     * @param crawlArchive the new archive or null to not use an archive
+     */
+    static void setCrawlArchive(final CrawlArchive crawlArchive) {
+        archive = crawlArchive;
     }
 
     /**
@@ -442,69 +757,78 @@ public class URLS {
         if (url == null) {
             throw new NullPointerException("url");
         }
-        System.out.print("loading page (GET) : [" + url + "]");
-        HttpURLConnection.setFollowRedirects(false);
-        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Accept-Charset", DEFAULT_ENCODING);
-        connection.setRequestProperty("User-Agent", "curl/7.29.0");
-        connection.setRequestProperty("Accept", "*/*");
-        connection.connect();
-
-        int respCode = connection.getResponseCode();
-        final StringBuilder builder = new StringBuilder();
-        String location = url.toString();
-
-        while ((respCode >= 300) && (respCode <= 399)) {
-            location = connection.getHeaderField("Location");
-            connection = (HttpURLConnection)new URL(location).openConnection();
-            respCode = connection.getResponseCode();
+        final CrawlArchive arch = archive;
+        if ((arch != null) && arch.isReplay()) {
+            final CrawlArchive.Record record = replay(arch, url, null);
+            return new String[] {record.location, 
+                         readPage(new ByteArrayInputStream(record.body), true)};
         }
+        final FetchScheduler sched = scheduler;
+        final long start = sched.acquire(url);
+        final long begin = System.nanoTime();
+        final Object event = StageEvents.beginFetch();
+        final Page page = new Page();
+        IOException failure = null;
+        boolean error = true;
+        try {
+            openGet(url, page);
+            final String content = readPage(page.in, true);
+            error = false;
 
-        final boolean respCodeOk = (respCode == 200);
-        final BufferedReader reader;
-        boolean skipLine = false;
-
-        if (respCodeOk) {
-            reader = new BufferedReader(new InputStreamReader(
-                                connection.getInputStream(), DEFAULT_ENCODING));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(
-                                connection.getErrorStream(), DEFAULT_ENCODING));
+            return new String[] {page.location, content};
+        } catch (IOException ioe) {
+            failure = ioe;
+            throw ioe;
+        } finally {
+            release(sched, url, start, page, failure);
+            endFetch(event, url.toString(), "GET", page, begin, error);
         }
+    }
 
-        while (true) {
-            String line = reader.readLine();
-            if (line == null) {
-                break;
-            }
-            final String line2 = line.trim();
-
-            if (line2.startsWith("<!--")) {
-                if (line2.endsWith("-->")) {
-                    continue;
-                }
-                skipLine = true;
-            } else if (line2.endsWith("-->")) {
-                skipLine = false;
-                line = "";
-            }
-            if (! skipLine) {
-                builder.append(line);
-                builder.append("\n");
-            }
+    /**
+     * Given an url of a csv file, loads it (GET - method) and converts it into
+     * a Table object. The csv is parsed while it is downloaded.
+     * @param url url of the csv file
+     * @param separator field separator character
+     * @return the Table object
+     * @throws IOException
+     */
+    static Table loadTableGet(final URL url,
+                              final char separator) throws IOException {
+        if (url == null) {
+            throw new NullPointerException("url");
         }
-        reader.close();
-        connection.disconnect();
-
-        if (!respCodeOk) {
-            throw new IOException("url=[" + url + "]\ncode=" + respCode + "\n"
-                                                          + builder.toString());
+        final CrawlArchive arch = archive;
+        if ((arch != null) && arch.isReplay()) {
+            final CrawlArchive.Record record = replay(arch, url, null);
+            return new CSV_File().parse(new InputStreamReader(
+                                        new ByteArrayInputStream(record.body),
+                                              DEFAULT_ENCODING), separator);
         }
-        //System.out.print("+");
-        System.out.println(" - OK");
+        final FetchScheduler sched = scheduler;
+        final long start = sched.acquire(url);
+        final long begin = System.nanoTime();
+        final Object event = StageEvents.beginFetch();
+        final Page page = new Page();
+        IOException failure = null;
+        boolean error = true;
+        try {
+            openGet(url, page);
+            final Table table;
+            try (Reader reader = new InputStreamReader(page.in,
+                                                           DEFAULT_ENCODING)) {
+                table = new CSV_File().parse(reader, separator);
+            }
+            error = false;
 
-        return new String[] {location, builder.toString()};
+            return table;
+        } catch (IOException ioe) {
+            failure = ioe;
+            throw ioe;
+        } finally {
+            release(sched, url, start, page, failure);
+            endFetch(event, url.toString(), "GET", page, begin, error);
+        }
     }
 
     /**
@@ -524,49 +848,463 @@ public class URLS {
         if (urlParameters == null) {
             throw new NullPointerException("urlParameters");
         }
+        final CrawlArchive arch = archive;
+        if ((arch != null) && arch.isReplay()) {
+            final CrawlArchive.Record record = replay(arch, url, urlParameters);
+            return new String[] {record.location, 
+                        readPage(new ByteArrayInputStream(record.body), false)};
+        }
+        final FetchScheduler sched = scheduler;
+        final long start = sched.acquire(url);
+        final long begin = System.nanoTime();
+        final Object event = StageEvents.beginFetch();
+        final Page page = new Page();
+        IOException failure = null;
+        boolean error = true;
+        try {
+            openPost(url, urlParameters, page);
+            final String content = readPage(page.in, false);
+            error = false;
+
+            return new String[] {page.location, content};
+        } catch (IOException ioe) {
+            failure = ioe;
+            throw ioe;
+        } finally {
+            release(sched, url, start, page, failure);
+            endFetch(event, url + "?" + urlParameters, "POST", page, begin, 
+                                                                        error);
+        }
+    }
+
+    /**
+     * Informs the fetch scheduler that a request is finished. The latency is
+     * measured up to the response headers, so big pages and the csv parse do
+     * not look like a slow server. Only timeouts, connection failures and
+     * 5xx/429 responses are signs of congestion: a broken link (404) is not.
+     * @param sched the fetch scheduler
+     * @param url requested url
+     * @param start value returned by sched.acquire
+     * @param page the requested page
+     * @param failure the request error or null if there was no error
+     */
+    private static void release(final FetchScheduler sched,
+                                final URL url,
+                                final long start,
+                                final Page page,
+                                final IOException failure) {
+        assert sched != null;
+        assert url != null;
+        assert page != null;
+
+        final long end = (page.responded == 0) ? System.nanoTime() 
+                                               : page.responded;
+        final boolean congestion = (page.status >= 500) || (page.status == 429) 
+                                    || (failure instanceof SocketTimeoutException)
+                                    || (failure instanceof SocketException);
+
+        sched.release(url, end - start, congestion);
+    }
+
+    /**
+     * Records a page load into the run metrics, the JFR fetch event and the
+     * event log
+     * @param event token returned by StageEvents.beginFetch
+     * @param location loaded url (and post parameters)
+     * @param method http method
+     * @param page the loaded page
+     * @param begin System.nanoTime() when the load started
+     * @param error true if the page could not be loaded
+     */
+    private static void endFetch(final Object event,
+                                 final String location,
+                                 final String method,
+                                 final Page page,
+                                 final long begin,
+                                 final boolean error) {
+        final long nanos = System.nanoTime() - begin;
+        final int status = page.status;
+        final long bytes = (page.counter == null) ? 0 : page.counter.count;
+
+        RunMetrics.get().pageFetched(nanos, error);
+        if (event != null) {
+            StageEvents.endFetch(event, location, method, status, bytes);
+        }
+        EventLog.info("fetch", "method", method, "url", location, 
+                      "status", status, "bytes", bytes, 
+                      "cached", page.cached, 
+                      "ms", TimeUnit.NANOSECONDS.toMillis(nanos), 
+                      "error", error);
+    }
+
+    /**
+     * An opened page
+     */
+    private static class Page {
+        String location; // real location of the page (in case of redirect)
+        InputStream in;  // raw page content. Should be read and closed.
+        boolean cached;  // content comes from the response cache
+        int status;      // http response status or 0 if there is none
+        long responded;  // System.nanoTime() when the headers arrived or 0
+        CountingInputStream counter; // downloaded content or null if cached
+    }
+
+    /**
+     * Opens an url (GET - method). The page content can be read while it is
+     * downloaded and it is stored into the cache and/or the archive when the
+     * page input stream is closed.
+     * @param url url to be opened
+     * @param page where the opened page will be put. Its status is set even
+     * if the response code is not OK.
+     * @throws IOException if the page can not be loaded or its response code
+     * is not OK
+     */
+    private static void openGet(final URL url,
+                                final Page page) throws IOException {
+        assert url != null;
+        assert page != null;
+
+        final CrawlArchive arch = archive;
+        final ResponseCache rcache = cache;
+        final ResponseCache.Entry cached = (rcache == null) ? null
+                                                        : rcache.get(url, null);
+        final HttpFetcher.Response response = fetcher.get(url,
+                                                        getValidators(cached));
+        final int respCode = response.status;
+
+        page.responded = System.nanoTime();
+        page.status = respCode;
+        if ((respCode == HttpURLConnection.HTTP_NOT_MODIFIED) 
+                                                          && (cached != null)) {
+            response.body.close();
+            page.location = cached.location;
+            page.in = new ByteArrayInputStream(cached.body);
+            page.cached = true;
+            if (arch != null) {
+                page.in = new StoringInputStream(page.in, url, null, 200,
+                                          cached.location, null, null, arch, null);
+            }
+            return;
+        }
+        page.location = response.location.toString();
+        page.counter = new CountingInputStream(response.body);
+        page.in = page.counter;
+        if ((arch != null) || ((respCode == 200) && (rcache != null) 
+               && ((response.etag != null) || (response.lastModified != null)))) {
+            page.in = new StoringInputStream(page.in, url, null, respCode,
+                                page.location, response.etag,
+                                response.lastModified, arch,
+                                (respCode == 200) ? rcache : null);
+        }
+        if (respCode != 200) {
+            throw new IOException("url=[" + url + "]\ncode=" + respCode + "\n"
+                                                  + readPage(page.in, true));
+        }
+    }
+
+    /**
+     * Opens an url (POST - method). The page content can be read while it is
+     * downloaded and it is stored into the cache and/or the archive when the
+     * page input stream is closed.
+     * @param url url to be opened
+     * @param urlParameters post parameters
+     * @param page where the opened page will be put. Its status is set even
+     * if the response code is an error code.
+     * @throws IOException if the page can not be loaded or its response code
+     * is an error code
+     */
+    private static void openPost(final URL url,
+                                 final String urlParameters,
+                                 final Page page) throws IOException {
+        assert url != null;
+        assert urlParameters != null;
+        assert page != null;
+
         final String encodedParams = URLEncoder.encode(urlParameters, 
                                                               DEFAULT_ENCODING);
-//System.out.print("loading page (POST): [" + url + "] params: " + urlParameters);
-
-        //Create connection
-        final HttpURLConnection connection =
-                                        (HttpURLConnection)url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type",
-                                           "application/x-www-form-urlencoded");
-        connection.setRequestProperty("Content-Length", "" +
-                             Integer.toString(encodedParams
-                                    .getBytes().length));
-                                    //.getBytes(DEFAULT_ENCODING).length));
-        connection.setRequestProperty("Content-Language", "pt-BR");
-        connection.setUseCaches (false);
-        connection.setDoInput(true);
-        connection.setDoOutput(true);
-        try (DataOutputStream wr = new DataOutputStream(
-                                                connection.getOutputStream())) {
-            wr.write(encodedParams.getBytes(DEFAULT_ENCODING));
-            //wr.writeBytes(urlParameters);
-            wr.flush ();
-        }
-
-        //Get Response
-        final StringBuffer response = new StringBuffer();
-        try (final BufferedReader rd = new BufferedReader(
-                      new InputStreamReader(connection.getInputStream(),
-                                                           DEFAULT_ENCODING))) {
+        final CrawlArchive arch = archive;
+        final ResponseCache rcache = cache;
+        final ResponseCache.Entry cached = (rcache == null) ? null
+                                               : rcache.get(url, urlParameters);
+        final Map<String,String> headers = getValidators(cached);
+
+        headers.put("Content-Type", "application/x-www-form-urlencoded");
+        headers.put("Content-Language", "pt-BR");
+
+        final HttpFetcher.Response response = fetcher.post(url, 
+                             encodedParams.getBytes(DEFAULT_ENCODING), headers);
+        final int respCode = response.status;
+
+        page.responded = System.nanoTime();
+        page.location = url.toString() + "?" + urlParameters;
+        page.status = respCode;
+        if ((respCode == HttpURLConnection.HTTP_NOT_MODIFIED) 
+                                                          && (cached != null)) {
+            response.body.close();
+            page.in = new ByteArrayInputStream(cached.body);
+            page.cached = true;
+            if (arch != null) {
+                page.in = new StoringInputStream(page.in, url, urlParameters, 
+                                    200, page.location, null, null, arch, null);
+            }
+            return;
+        }
+        if (respCode >= 400) {
+            if (arch == null) {
+                response.body.close();
+            } else {
+                // archived as the GET error responses, so the replay fails
+                // in the same way
+                new StoringInputStream(response.body, url, urlParameters, 
+                    respCode, page.location, null, null, arch, null).close();
+            }
+            throw new IOException("url=[" + url + "] params=[" + urlParameters 
+                                                      + "]\ncode=" + respCode);
+        }
+        page.counter = new CountingInputStream(response.body);
+        page.in = page.counter;
+        if ((arch != null) || ((rcache != null) 
+               && ((response.etag != null) || (response.lastModified != null)))) {
+            page.in = new StoringInputStream(page.in, url, urlParameters, 
+                                respCode, page.location, response.etag, 
+                                response.lastModified, arch, rcache);
+        }
+    }
+
+    /**
+     * Input stream that counts the read bytes and adds them to the downloaded
+     * bytes of the run metrics
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int ch = in.read();
+            if (ch != -1) {
+                count++;
+                RunMetrics.get().bytesDownloaded(1);
+            }
+            return ch;
+        }
+
+        @Override
+        public int read(final byte[] buffer,
+                        final int off,
+                        final int len) throws IOException {
+            final int rlen = in.read(buffer, off, len);
+            if (rlen > 0) {
+                count += rlen;
+                RunMetrics.get().bytesDownloaded(rlen);
+            }
+            return rlen;
+        }
+    }
+
+    /**
+     * Input stream that keeps a copy of the read content. When it is closed,
+     * the remaining content is read and the whole content is stored into the
+     * archive and/or the cache.
+     */
+    private static class StoringInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream copy;
+        private final URL url;
+        private final String postParams;
+        private final int status;
+        private final String location;
+        private final String etag;
+        private final String lastModified;
+        private final CrawlArchive arch;
+        private final ResponseCache rcache;
+        private boolean failed;
+        private boolean closed;
+
+        StoringInputStream(final InputStream in,
+                           final URL url,
+                           final String postParams,
+                           final int status,
+                           final String location,
+                           final String etag,
+                           final String lastModified,
+                           final CrawlArchive arch,
+                           final ResponseCache rcache) {
+            super(in);
+            this.copy = new ByteArrayOutputStream();
+            this.url = url;
+            this.postParams = postParams;
+            this.status = status;
+            this.location = location;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.arch = arch;
+            this.rcache = rcache;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] buffer = new byte[1];
+            final int len = read(buffer, 0, 1);
+
+            return (len == -1) ? -1 : (buffer[0] & 0xFF);
+        }
+
+        @Override
+        public int read(final byte[] buffer,
+                        final int off,
+                        final int len) throws IOException {
+            final int rlen;
+            try {
+                rlen = in.read(buffer, off, len);
+            } catch (IOException ioe) {
+                failed = true;
+                throw ioe;
+            }
+            if (rlen > 0) {
+                copy.write(buffer, off, rlen);
+            }
+            return rlen;
+        }
+
+        @Override
+        public long skip(final long num) throws IOException {
+            final byte[] buffer = new byte[(int)Math.min(num, 8192)];
+            final int len = read(buffer, 0, buffer.length);
+
+            return (len == -1) ? 0 : len;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!failed) {
+                    final byte[] buffer = new byte[8192];
+                    while (read(buffer, 0, buffer.length) != -1) {
+                    }
+                    final byte[] content = copy.toByteArray();
+                    if (arch != null) {
+                        arch.put(url, postParams, status, location, content);
+                    }
+                    if (rcache != null) {
+                        rcache.put(url, postParams, location, etag, 
+                                                         lastModified, content);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Loads a page from the archive instead of the network
+     * @param arch archive in replay mode
+     * @param url url to be loaded
+     * @param postParams post parameters or null if it is a GET request
+     * @return the recorded response
+     * @throws IOException if the page is not in the archive or if its
+     * recorded response code is not OK
+     */
+    private static CrawlArchive.Record replay(final CrawlArchive arch,
+                                              final URL url,
+                                              final String postParams) 
+                                                            throws IOException {
+        assert arch != null;
+        assert url != null;
+
+        final CrawlArchive.Record record = arch.get(url, postParams);
+        if (record == null) {
+            throw new IOException("url=[" + url + "] params=[" + postParams 
+                                                     + "] not found in archive");
+        }
+        // same checks of openGet and openPost
+        if (postParams == null) {
+            if (record.status != 200) {
+                throw new IOException("url=[" + url + "]\ncode=" 
+                                    + record.status + "\n" + readPage(
+                                    new ByteArrayInputStream(record.body), true));
+            }
+        } else if (record.status >= 400) {
+            throw new IOException("url=[" + url + "] params=[" + postParams 
+                                               + "]\ncode=" + record.status);
+        }
+        return record;
+    }
+
+    /**
+     * Creates the conditional request headers of a cached response
+     * @param cached cached response or null
+     * @return a modifiable map of request headers
+     */
+    private static Map<String,String> getValidators(
+                                            final ResponseCache.Entry cached) {
+        final Map<String,String> headers = new HashMap<>();
+
+        if (cached != null) {
+            if (cached.etag != null) {
+                headers.put("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                headers.put("If-Modified-Since", cached.lastModified);
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Reads the content of a page
+     * @param in page input stream. It will be closed.
+     * @param skipComments if true, html comment lines are not read
+     * @return the page content
+     * @throws IOException 
+     */
+    private static String readPage(final InputStream in,
+                                   final boolean skipComments) 
+                                                            throws IOException {
+        assert in != null;
+
+        final StringBuilder builder = new StringBuilder();
+        boolean skipLine = false;
+
+        try (BufferedReader reader = new BufferedReader(
+                                   new InputStreamReader(in, DEFAULT_ENCODING))) {
             while (true) {
-                final String line = rd.readLine();
+                String line = reader.readLine();
                 if (line == null) {
                     break;
                 }
-                response.append(line);
-                response.append('\n');
+                if (skipComments) {
+                    final String line2 = line.trim();
+
+                    if (line2.startsWith("<!--")) {
+                        if (line2.endsWith("-->")) {
+                            continue;
+                        }
+                        skipLine = true;
+                    } else if (line2.endsWith("-->")) {
+                        skipLine = false;
+                        line = "";
+                    }
+                }
+                if (! skipLine) {
+                    builder.append(line);
+                    builder.append("\n");
+                }
             }
         }
-        connection.disconnect();
-
-        return new String[] {url.toString() + "?" + urlParameters,
-                                                           response.toString()};
+        return builder.toString();
     }
 
     /**
@@ -577,7 +1315,7 @@ public class URLS {
      * @return a set if html and/or def links found inside a page.
      * @throws IOException 
      */
-    private static Set<URL> getPageDefHtmlUrls(final URL url,
+    static Set<URL> getPageDefHtmlUrls(final URL url,
                                                final String content,
                                                final Set<URL> history)
                                                             throws IOException {
@@ -631,17 +1369,20 @@ public class URLS {
     /**
      * Saves a cell info into a file
      * @param cell cell to be saved
-     * @param rootDir directory where the file will be created
+     * @param context render context of the cell table
+     * @param writer writer of the created files
      * @param tableNum the table number to be used to create the file name
      * @return the new created file name. Where path is composed by cells edition
      * + qualification record category + file name.
      * @throws IOException 
      */
     private static String saveToFile(final Cell cell,
-                                     final File rootDir,
+                                     final RIPSA.Context context,
+                                     final OutputWriter writer,
                                      final int tableNum) throws IOException {
         assert cell != null;
-        assert rootDir != null;
+        assert context != null;
+        assert writer != null;
         assert tableNum > 0;
 
         //final String father = cell.getElem().father.toString();
@@ -657,55 +1398,21 @@ public class URLS {
         final int idx2 = father.lastIndexOf('.');*/
         //final String category = father.substring(idx1 + 1, idx2);
         final String fname = qualRec + "_tb" + tableNum + "_ce" + cell.getIdx();
-        final File path = new File(rootDir, "/" + uQualRec.charAt(0) + "/" 
-                                                                    + uQualRec);
-        final String spath = path.getPath();
-        final String cfname = fname + ".html";
+        final String cfname = uQualRec.charAt(0) + "/" + uQualRec + "/" 
+                                                              + fname + ".html";
 
-        if (!path.isDirectory()) {
-            if (!path.mkdirs()) {
-                throw new IOException("directory [" + spath
-                                                          + "] creation error");
-            }
-        }
-        saveToRipsaFile(cell, path, cfname);
+        // the directory is created and the file is written in background
+        writer.write(cfname, RIPSA.cell2html(cell, context));
 
-        return uQualRec.charAt(0) + "/" + uQualRec + "/" + cfname;
+        return cfname;
     }
 
-    /**
-     * Given a cell object, saves it into a file
-     * @param cell the object info to be saved
-     * @param path the path where the file will be created
-     * @param fname file name
-     * @throws IOException 
-     */
-    private static void saveToRipsaFile(final Cell cell,
-                                        final File path,
-                                        final String fname) throws IOException {
-        assert cell != null;
-        assert path != null;
-        assert fname != null;
-
-        final File file = new File(path, fname);
-        final String content = RIPSA.cell2html(cell);
-        
-        if (file.exists()) {
-            throw new IOException("File[" + file.getPath() 
-                                                          + "] already exists");
-        }
-        try (final BufferedWriter writer = new BufferedWriter(
-                                       new FileWriter(file))) {
-            writer.append(content);
-        }        
-    }
-    
     /**
      * Some html pages warns why they not have csv links inside header marks
      * @param content the html page content
      * @return the warning message
      */
-    private static String findErrorMessage(final String content) {
+    static String findErrorMessage(final String content) {
         assert content != null;
         
         final Pattern pat = Pattern.compile("(?i)<h(\\d)>(.+?)</h\\1>");        
@@ -714,6 +1421,10 @@ public class URLS {
         return mat.find() ? mat.group(2) : "";
     }
 
+    /**
+     * @param logDir log directory
+     * @return the log file name of this run, without suffix
+     */
     private static String getLogFileName(final String logDir) {
         assert logDir != null;
         
@@ -726,126 +1437,82 @@ public class URLS {
             builder.append('/');
         }
         builder.append(date);
-        builder.append(".log");
         
         return builder.toString();
     }
            
-    private static void createAllSitemap(final Set<String> files,
-                                         final File root) throws IOException {        
-        assert files != null;
-        assert root != null;
-        
-        final Map<String,Set<String>> map = createMapFiles(files);
-        
-        createSitemapIndex(map, root);
-        createSitemap(map, root);        
-    }
-    
-    private static Map<String,Set<String>> createMapFiles(
-                                   final Set<String> files) throws IOException {
-        assert files != null;
-        
-        final Map<String,Set<String>> cells = new TreeMap<>();
-        
-        for (String fpath : files) {
-            final String[] split = fpath.split("/", 3);
-            if (split.length != 3) {
-                throw new IOException("invalid file name: [" + fpath + "]");
-            }
-            Set<String> names = cells.get(split[1]);
-            if (names == null) {
-                names = new HashSet<>();
-                cells.put(split[1], names);
-            }
-            names.add(split[2]);
-        }        
-        return cells;
-    }
-    
-    private static void createSitemapIndex(
-                                       final Map<String,Set<String>> categories,
-                                       final File root) throws IOException {        
-        assert categories != null;
-        assert root != null;
-        
-        final String lastmod = new SimpleDateFormat("yyyy-MM-dd")
-                                                            .format(new Date());
-        try (final BufferedWriter writer = new BufferedWriter(new FileWriter(
-                new File(root, "sitemapindex.xml")))) {
-            writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            writer.append("\t<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
-            for (String cat : categories.keySet()) {
-                writer.append("\t<sitemap>\n");
-                writer.append("\t\t<loc>");
-                writer.append(OUT_SITE_URL);
-                writer.append("/");
-                writer.append(cat.charAt(0));
-                writer.append("/");
-                writer.append(cat);
-                writer.append("/sitemap_");
-                writer.append(cat);
-                writer.append(".xml</loc>\n");
-                writer.append("\t\t<lastmod>");
-                writer.append(lastmod);
-                writer.append("</lastmod>\n");
-                writer.append("\t</sitemap>\n");
-            }
-            writer.append("</sitemapindex>\n");
-        }
-    }
-    
-    private static void createSitemap(final Map<String,Set<String>> categories,
-                                      final File root) throws IOException {        
-        assert categories != null;
-        assert root != null;
-        
-        final String lastmod = new SimpleDateFormat("yyyy-MM-dd")
-                                                            .format(new Date());
-        for (Map.Entry<String,Set<String>> entry : categories.entrySet()) {
-            final String cat = entry.getKey();
-            final String fname = cat.charAt(0) + "/" + cat + "/sitemap_" 
-                                                            + cat + ".xml";
-            
-            try (final BufferedWriter writer = new BufferedWriter(new FileWriter(
-                                                      new File(root, fname)))) {
-                writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-                writer.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
-                for (final String fname2 : entry.getValue()) {
-                    writer.append("\t<url>\n");
-                    writer.append("\t\t<loc>");
-                    writer.append(OUT_SITE_URL);
-                    writer.append("/");
-                    writer.append(cat.charAt(0));
-                    writer.append("/");
-                    writer.append(cat);
-                    writer.append("/");
-                    writer.append(StringEscapeUtils.escapeHtml4(
-                                           URLEncoder.encode(fname2, "UTF-8")));
-                    writer.append("</loc>\n");
-                    writer.append("\t\t<lastmod>");
-                    writer.append(lastmod);
-                    writer.append("</lastmod>\n");
-                    writer.append("\t\t<changefreq>monthly</changefreq>\n");
-                    writer.append("\t</url>\n");
-                }
-                writer.append("</urlset>");
-            }
-        }
-    }
-    
     private static void usage() {
-        System.err.println("usage: URLS <outputDir>");
+        System.err.println("usage: URLS <outputDir> [-threads=<num>]"
+                         + " [-hostLimit=<num>] [-requestsPerSecond=<num>]"
+                         + " [-cache[=<dir>]]"
+                         + " [-record=<archive>|-replay=<archive>]"
+                         + " [-pack[=store]|-incremental]");
         System.exit(1);
     }
     
     public static void main(final String[] args) throws IOException {                
-        if (args.length != 1) {
+        if (args.length < 1) {
             usage();
         }
         
+        int threads = DEFAULT_THREADS;
+        int hostLimit = FetchScheduler.DEFAULT_MAX_LIMIT;
+        double requestsPerSecond = FetchScheduler.DEFAULT_REQUESTS_PER_SECOND;
+        String cacheDir = null;
+        String recordFile = null;
+        String replayFile = null;
+        boolean pack = false;
+        boolean compress = true;
+        boolean incremental = false;
+        for (int idx = 1; idx < args.length; idx++) {
+            if (args[idx].startsWith("-threads=")) {
+                threads = Integer.parseInt(args[idx].substring(9));
+            } else if (args[idx].startsWith("-hostLimit=")) {
+                hostLimit = Integer.parseInt(args[idx].substring(11));
+            } else if (args[idx].startsWith("-requestsPerSecond=")) {
+                requestsPerSecond = Double.parseDouble(args[idx].substring(19));
+            } else if (args[idx].equals("-cache")) {
+                cacheDir = "";
+            } else if (args[idx].startsWith("-cache=")) {
+                cacheDir = args[idx].substring(7);
+            } else if (args[idx].startsWith("-record=")) {
+                recordFile = args[idx].substring(8);
+            } else if (args[idx].startsWith("-replay=")) {
+                replayFile = args[idx].substring(8);
+            } else if (args[idx].equals("-pack")) {
+                pack = true;
+            } else if (args[idx].equals("-pack=store")) {
+                pack = true;
+                compress = false;
+            } else if (args[idx].equals("-incremental")) {
+                incremental = true;
+            } else {
+                usage();
+            }
+        }
+        // read by the JVM when the first http connection is opened, so they
+        // are set before any page is loaded
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(hostLimit));
+        setFetchScheduler(new FetchScheduler(
+                  Math.min(FetchScheduler.DEFAULT_INITIAL_LIMIT, hostLimit), 
+                                                 hostLimit, requestsPerSecond));
+        
         final String out = args[0].trim();
         final String outDir = (out.endsWith("/")) ? out : out + "/";
+        if (cacheDir != null) {
+            setResponseCache(new ResponseCache(new File(cacheDir.isEmpty()
+                                               ? outDir + "cache" : cacheDir)));
+        }
+        if (((recordFile != null) && (replayFile != null)) 
+                                                     || (pack && incremental)) {
+            usage();
+        }
+        if (recordFile != null) {
+            setCrawlArchive(CrawlArchive.record(new File(recordFile)));
+        } else if (replayFile != null) {
+            setCrawlArchive(CrawlArchive.replay(new File(replayFile)));
+        }
         final String LOG_DIR = "log";
         final File logDir = new File(LOG_DIR);
         if (!logDir.exists()) {
@@ -855,16 +1522,38 @@ public class URLS {
             }
         }
         
+        final String logFile = getLogFileName(LOG_DIR);
         final Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
-        final FileHandler fh = new FileHandler(getLogFileName(LOG_DIR), false);  
-        logger.addHandler(fh); 
+        EventLog.open(new File(logFile + ".jsonl"), System.console() != null);
+        logger.setUseParentHandlers(false);
+        logger.addHandler(EventLog.newHandler()); 
+        RunMetrics.register();
         
         final String URL = URLS.ROOT_URL;
         final TimeString time = new TimeString();
 
         time.start();
-        generateFileStructure(URL, outDir + "celulasIDB");
-        
-        System.out.println("Total time: " + time.getTime());
+        try {
+            if (pack) {
+                generateFileArchive(URL, outDir + "celulasIDB.zip", compress,
+                                                                      threads);
+            } else if (incremental) {
+                generateFileUpdate(URL, outDir + "celulasIDB", threads);
+            } else {
+                generateFileStructure(URL, outDir + "celulasIDB", threads);
+            }
+            EventLog.message("Total time: " + time.getTime());
+        } finally {
+            try {
+                if (archive != null) {
+                    archive.close();
+                }
+                final File metrics = new File(logFile + "-metrics.json");
+                RunMetrics.get().writeJson(metrics);
+                EventLog.message("Run metrics: " + metrics.getPath());
+            } finally {
+                EventLog.close();
+            }
+        }
     }
 }
@@ -0,0 +1,123 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes all output files as entries of a single zip file, using the same
+ * paths of a DirectorySink. The zip file is written sequentially, one entry
+ * after the other.
+ * date: 20261018
+ */
+class ZipSink implements OutputSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ZipOutputStream out;
+    private final boolean compress;
+    private final byte[] buffer;
+    private final CRC32 crc;
+
+    /**
+     * Constructor
+     * @param zip the zip file to be created. If it exists, it is replaced.
+     * @param compress if true the entries are deflated, otherwise they are
+     * only stored
+     * @throws IOException 
+     */
+    ZipSink(final File zip,
+            final boolean compress) throws IOException {
+        if (zip == null) {
+            throw new NullPointerException("zip");
+        }
+        final File parent = zip.getAbsoluteFile().getParentFile();
+        if ((parent != null) && (!parent.isDirectory()) && (!parent.mkdirs())) {
+            throw new IOException("directory [" + parent.getPath()
+                                                          + "] creation error");
+        }
+        this.out = new ZipOutputStream(new BufferedOutputStream(
+                                  new FileOutputStream(zip), BUFFER_SIZE));
+        this.out.setMethod(compress ? ZipOutputStream.DEFLATED 
+                                    : ZipOutputStream.STORED);
+        this.compress = compress;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.crc = new CRC32();
+    }
+
+    @Override
+    public synchronized void write(final String path,
+                                   final ByteBuffer content) 
+                                                            throws IOException {
+        if (path == null) {
+            throw new NullPointerException("path");
+        }
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        final ZipEntry entry = new ZipEntry(path);
+
+        if (!compress) {
+            // stored entries must have their size and crc before the data
+            final int size = content.remaining();
+            crc.reset();
+            content.mark();
+            while (content.hasRemaining()) {
+                final int len = Math.min(buffer.length, content.remaining());
+                content.get(buffer, 0, len);
+                crc.update(buffer, 0, len);
+            }
+            content.reset();
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc.getValue());
+        }
+        try {
+            out.putNextEntry(entry);
+        } catch (ZipException ex) {
+            if ((ex.getMessage() != null) 
+                                && ex.getMessage().startsWith("duplicate")) {
+                throw new IOException("File[" + path + "] already exists", ex);
+            }
+            throw ex;
+        }
+        while (content.hasRemaining()) {
+            final int len = Math.min(buffer.length, content.remaining());
+            content.get(buffer, 0, len);
+            out.write(buffer, 0, len);
+        }
+        out.closeEntry();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,164 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the AIMD concurrency limit of FetchScheduler through URLS.loadPageGet
+ * against a local stub server whose latency and response status can be
+ * changed.
+ * date: 20261018
+ */
+public class FetchSchedulerTest {
+    private static final int INITIAL_LIMIT = 2;
+    private static final int MAX_LIMIT = 6;
+    private static final int MAX_REQUESTS = 500;
+
+    private HttpServer server;
+    private FetchScheduler scheduler;
+    private URL url;
+    private volatile int status;  // status of the stub responses
+    private volatile long delay;  // latency (milliseconds) of the stub
+
+    @Before
+    public void setUp() throws IOException {
+        status = 200;
+        delay = 0;
+        server = HttpServer.create(new InetSocketAddress(
+                                           InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) 
+                                                            throws IOException {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                final byte[] bytes = "<html>page</html>".getBytes("ISO-8859-1");
+                exchange.sendResponseHeaders(status, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        });
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort()
+                                                              + "/page.htm");
+        // no rate limit, only the concurrency limit is checked
+        scheduler = new FetchScheduler(INITIAL_LIMIT, MAX_LIMIT, 0);
+        URLS.setFetchScheduler(scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        URLS.setFetchScheduler(new FetchScheduler());
+        server.stop(0);
+    }
+
+    @Test
+    public void shrinksOnServerErrorsAndRecovers() throws IOException {
+        growToMax();
+
+        status = 503;
+        load();
+        final int limit = scheduler.getLimit(url);
+        assertTrue("limit " + limit, limit < MAX_LIMIT);
+
+        status = 200;
+        growToMax();
+    }
+
+    @Test
+    public void shrinksOnTooManyRequestsAndRecovers() throws IOException {
+        growToMax();
+
+        status = 429;
+        load();
+        final int limit = scheduler.getLimit(url);
+        assertTrue("limit " + limit, limit < MAX_LIMIT);
+
+        status = 200;
+        growToMax();
+    }
+
+    @Test
+    public void doesNotShrinkOnBrokenLinks() throws IOException {
+        growToMax();
+
+        status = 404;
+        for (int idx = 0; idx < 10; idx++) {
+            load();
+        }
+        assertEquals(MAX_LIMIT, scheduler.getLimit(url));
+    }
+
+    @Test
+    public void shrinksOnLatencyAndRecovers() throws IOException {
+        growToMax();
+
+        delay = 100;
+        int requests = 0;
+        while (scheduler.getLimit(url) == MAX_LIMIT) {
+            assertTrue("limit did not shrink", ++requests < 50);
+            load();
+        }
+
+        delay = 0;
+        growToMax();
+    }
+
+    /**
+     * Loads the page until the scheduler limit reaches its maximum
+     */
+    private void growToMax() {
+        int requests = 0;
+
+        while (scheduler.getLimit(url) < MAX_LIMIT) {
+            assertTrue("limit did not grow: " + scheduler.getLimit(url), 
+                                                   ++requests < MAX_REQUESTS);
+            load();
+        }
+    }
+
+    private void load() {
+        try {
+            URLS.loadPageGet(url);
+        } catch (IOException ioe) {
+            // error responses are expected
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*=========================================================================
+
+    Copyright © 2026 BIREME/PAHO/WHO
+
+    This file is part of TabNetCells.
+
+    TabNetCells is free software: you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public License as
+    published by the Free Software Foundation, either version 2.1 of
+    the License, or (at your option) any later version.
+
+    TabNetCells is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with TabNetCells. If not, see
+    <http://www.gnu.org/licenses/>.
+
+=========================================================================*/
+
+package br.bireme.tb;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs URLS.generateFileUpdate twice against a local stub server. In the
+ * second run a table can not be rendered, so the files of the first run
+ * must survive.
+ * date: 20261018
+ */
+public class IncrementalUpdateTest {
+    private static final String CSV =
+        "Mortalidade proporcional por idade;;;\n"
+      + "Brasil, 2011;;;\n"
+      + "Região;Masculino;Feminino;Total\n"
+      + "Norte;1.234,56;12,5;78\n"
+      + "Sul;0,5;1234567,89*;-12,3\n"
+      + "Fonte: MS/SVS - Sistema de Informações sobre Mortalidade.;;;\n"
+      + "Legenda:;;;\n"
+      + "* Dado parcial.;;;\n";
+
+    private HttpServer server;
+    private String base;
+    private File dir;
+    private volatile String bFicha;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("incremental").toFile();
+        bFicha = ficha("b");
+        server = HttpServer.create(new InetSocketAddress(
+                                           InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) 
+                                                            throws IOException {
+                final String path = exchange.getRequestURI().getPath();
+                final String body;
+
+                if (path.equals("/idb2011/index.htm")) {
+                    body = "<html><a href=\"" + base + "/idb2011/a.htm\">A</a> "
+                          + "<a href=\"" + base + "/idb2011/b.htm\">B</a></html>";
+                } else if (path.equals("/idb2011/a.htm")) {
+                    body = page(ficha("a"), "a");
+                } else if (path.equals("/idb2011/b.htm")) {
+                    body = page(bFicha, "b");
+                } else if (path.startsWith("/csv/")) {
+                    body = CSV;
+                } else {
+                    body = null;
+                }
+                final byte[] bytes = (body == null) ? new byte[0]
+                                                : body.getBytes("ISO-8859-1");
+                exchange.sendResponseHeaders((body == null) ? 404 : 200, 
+                                      (bytes.length == 0) ? -1 : bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        });
+        server.start();
+        // URLS.withDomain drops the port of relative links, so the pages only
+        // have absolute ones. URLS.CSV_PATTERN does not accept dots before the
+        // csv extension, so the host is not an ip address.
+        base = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        delete(dir);
+    }
+
+    @Test
+    public void keepsFilesOfATableThatCanNotBeRendered() throws IOException {
+        final String url = base + "/idb2011/index.htm";
+        final File root = new File(dir, "cells");
+
+        URLS.generateFileUpdate(url, root.getPath(), 2);
+        final Set<String> first = cellFiles(root, "");
+        assertTrue(containsTable(first, "b01_"));
+
+        // the qualification record url of table b is out of pattern now, so
+        // RIPSA.newContext fails and the table is dropped
+        bFicha = "http://www.ripsa.org.br/outra.htm";
+        final long failed = RunMetrics.get().getTablesFailed();
+        URLS.generateFileUpdate(url, root.getPath(), 2);
+
+        assertTrue(RunMetrics.get().getTablesFailed() > failed);
+        assertEquals(first, cellFiles(root, ""));
+        assertFalse(Files.readAllLines(new File(dir, "cells.changes").toPath(),
+                             java.nio.charset.StandardCharsets.UTF_8).toString()
+                                                                 .contains("D "));
+    }
+
+    private static String ficha(final String table) {
+        return "http://www.ripsa.org.br/fichas/?node=" + table 
+                                             + "01&lang=pt&version=idb2011";
+    }
+
+    private String page(final String ficha,
+                        final String table) {
+        return "<html><a href=\"" + ficha + "\">Ficha de qualificação</a> "
+          + "<a href=\"" + base + "/csv/" + table + ".csv\">csv</a></html>";
+    }
+
+    private static boolean containsTable(final Set<String> files,
+                                         final String prefix) {
+        for (String file : files) {
+            if (file.substring(file.lastIndexOf('/') + 1).startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> cellFiles(final File file,
+                                         final String path) {
+        final Set<String> ret = new TreeSet<>();
+
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                ret.addAll(cellFiles(child, path + "/" + child.getName()));
+            }
+        } else if (path.contains("_ce")) {
+            ret.add(path);
+        }
+        return ret;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}